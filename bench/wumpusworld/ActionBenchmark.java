@@ -0,0 +1,102 @@
+package wumpusworld;
+
+import java.util.Random;
+
+/**
+ * Measures the cost of executing actions in the Wumpus World, comparing
+ * the String based doAction with the typed doAction(int).
+ */
+public class ActionBenchmark
+{
+    private static final int ACTIONS = 1 << 16;
+    private static final int WARMUP_ROUNDS = 200;
+    private static final int ROUNDS = 500;
+    
+    private static final String[] ACTION_STRINGS = {World.A_MOVE, World.A_TURN_LEFT, World.A_TURN_RIGHT, World.A_CLIMB};
+    
+    public static void main(String[] args)
+    {
+        // Build a fixed random action sequence. Grab and shoot are left out
+        // so that games rarely end and the world is seldom recreated.
+        Random rnd = new Random(1977);
+        String[] strings = new String[ACTIONS];
+        int[] codes = new int[ACTIONS];
+        for (int i = 0; i < ACTIONS; i++)
+        {
+            strings[i] = ACTION_STRINGS[rnd.nextInt(ACTION_STRINGS.length)];
+            codes[i] = World.actionCode(strings[i]);
+        }
+        WorldMap map = MapGenerator.getRandomMap(42);
+        
+        for (int i = 0; i < WARMUP_ROUNDS; i++)
+        {
+            runStrings(map, strings);
+            runCodes(map, codes);
+        }
+        
+        long stringTime = 0;
+        long codeTime = 0;
+        int sink = 0;
+        for (int i = 0; i < ROUNDS; i++)
+        {
+            long start = System.nanoTime();
+            sink += runStrings(map, strings);
+            stringTime += System.nanoTime() - start;
+            
+            start = System.nanoTime();
+            sink += runCodes(map, codes);
+            codeTime += System.nanoTime() - start;
+        }
+        
+        double total = (double)ACTIONS * ROUNDS;
+        System.out.printf("doAction(String): %.2f ns/action%n", stringTime / total);
+        System.out.printf("doAction(int):    %.2f ns/action%n", codeTime / total);
+        System.out.println("(checksum " + sink + ")");
+    }
+    
+    /**
+     * Executes the action sequence with action strings.
+     * 
+     * @param map Map to play on
+     * @param actions Action strings
+     * @return Sum of scores, to keep the work from being optimized away
+     */
+    private static int runStrings(WorldMap map, String[] actions)
+    {
+        World w = map.generateWorld();
+        int sum = 0;
+        for (String a : actions)
+        {
+            w.doAction(a);
+            if (w.gameOver())
+            {
+                sum += w.getScore();
+                w = map.generateWorld();
+            }
+        }
+        return sum + w.getScore();
+    }
+    
+    /**
+     * Executes the action sequence with action codes.
+     * 
+     * @param map Map to play on
+     * @param actions Action codes
+     * @return Sum of scores, to keep the work from being optimized away
+     */
+    private static int runCodes(WorldMap map, int[] actions)
+    {
+        World w = map.generateWorld();
+        int sum = 0;
+        for (int a : actions)
+        {
+            w.doAction(a);
+            if (w.gameOver())
+            {
+                sum += w.getScore();
+                w = map.generateWorld();
+            }
+        }
+        return sum + w.getScore();
+    }
+}
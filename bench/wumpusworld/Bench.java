@@ -0,0 +1,173 @@
+package wumpusworld;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.IntSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Minimal benchmark harness in the style of JMH. Each benchmark is a
+ * function that does a fixed number of operations per call and returns a
+ * value that is consumed, so the work cannot be optimized away. A benchmark
+ * runs a number of warmup iterations, then measurement iterations of a fixed
+ * duration, and reports the average time per operation with a 99.9%
+ * confidence interval.
+ * <p>
+ * Results are printed as a table and written as JSON, in the same layout as
+ * JMH's JSON result format, so the usual JMH tools can read them.
+ */
+public class Bench
+{
+    // Student's t for a two sided 99.9% interval, by degrees of freedom
+    private static final double[] T_999 = {0, 636.62, 31.60, 12.92, 8.61, 6.87, 5.96, 5.41, 5.04, 4.78, 4.59};
+    
+    private int warmupIterations = 3;
+    private int measurementIterations = 5;
+    private long iterationMillis = 500;
+    private Pattern filter = Pattern.compile(".*");
+    private String output = "bench_results.json";
+    private final List<String> results = new ArrayList<>();
+    private int sink;
+    
+    /**
+     * Creates a harness configured from command line arguments:
+     * -wi warmup iterations, -i measurement iterations, -r iteration
+     * time in milliseconds, -o JSON output file, and a regular expression
+     * selecting benchmarks by name.
+     * 
+     * @param args Command line arguments
+     */
+    public Bench(String[] args)
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            switch (args[i])
+            {
+                case "-wi": warmupIterations = Integer.parseInt(args[++i]); break;
+                case "-i": measurementIterations = Integer.parseInt(args[++i]); break;
+                case "-r": iterationMillis = Long.parseLong(args[++i]); break;
+                case "-o": output = args[++i]; break;
+                default: filter = Pattern.compile(args[i]);
+            }
+        }
+    }
+    
+    /**
+     * Runs a benchmark, unless it is filtered out.
+     * 
+     * @param name Benchmark name
+     * @param opsPerCall Number of operations done by one call of the body
+     * @param body Benchmark body. Its result is consumed.
+     */
+    public void run(String name, int opsPerCall, IntSupplier body)
+    {
+        if (!filter.matcher(name).find())
+            return;
+        
+        for (int i = 0; i < warmupIterations; i++)
+        {
+            iteration(opsPerCall, body);
+        }
+        double[] scores = new double[measurementIterations];
+        for (int i = 0; i < measurementIterations; i++)
+        {
+            scores[i] = iteration(opsPerCall, body);
+        }
+        
+        double mean = 0;
+        for (double s : scores) mean += s;
+        mean /= scores.length;
+        double error = Double.NaN;
+        if (scores.length > 1)
+        {
+            double var = 0;
+            for (double s : scores) var += (s - mean) * (s - mean);
+            var /= scores.length - 1;
+            int df = scores.length - 1;
+            double t = df < T_999.length ? T_999[df] : 3.29;
+            error = t * Math.sqrt(var / scores.length);
+        }
+        
+        System.out.println(String.format(Locale.ROOT, "%-32s %14.3f ± %10.3f  ns/op", name, mean, error));
+        results.add(json(name, mean, error, scores));
+    }
+    
+    /**
+     * Writes all results to the JSON output file.
+     * 
+     * @throws IOException If the file cannot be written
+     */
+    public void writeResults() throws IOException
+    {
+        try (PrintWriter out = new PrintWriter(new FileWriter(output)))
+        {
+            out.println("[");
+            for (int i = 0; i < results.size(); i++)
+            {
+                out.print(results.get(i));
+                out.println(i < results.size() - 1 ? "," : "");
+            }
+            out.println("]");
+        }
+        System.out.println("Results written to " + output + " (checksum " + sink + ")");
+    }
+    
+    /**
+     * Runs the body for one iteration.
+     * 
+     * @return Average nanoseconds per operation
+     */
+    private double iteration(int opsPerCall, IntSupplier body)
+    {
+        long calls = 0;
+        long start = System.nanoTime();
+        long end = start + iterationMillis * 1000000L;
+        long now;
+        do
+        {
+            sink ^= body.getAsInt();
+            calls++;
+            now = System.nanoTime();
+        }
+        while (now < end);
+        return (now - start) / ((double)calls * opsPerCall);
+    }
+    
+    /**
+     * Formats a result as a JMH style JSON object.
+     */
+    private String json(String name, double score, double error, double[] raw)
+    {
+        StringBuilder rawData = new StringBuilder();
+        for (int i = 0; i < raw.length; i++)
+        {
+            rawData.append(i > 0 ? ", " : "").append(number(raw[i]));
+        }
+        return "  {\n"
+            + "    \"benchmark\": \"wumpusworld." + name + "\",\n"
+            + "    \"mode\": \"avgt\",\n"
+            + "    \"threads\": 1,\n"
+            + "    \"forks\": 0,\n"
+            + "    \"jvm\": \"" + System.getProperty("java.home").replace("\\", "\\\\") + "\",\n"
+            + "    \"jdkVersion\": \"" + System.getProperty("java.version") + "\",\n"
+            + "    \"warmupIterations\": " + warmupIterations + ",\n"
+            + "    \"warmupTime\": \"" + iterationMillis + " ms\",\n"
+            + "    \"measurementIterations\": " + measurementIterations + ",\n"
+            + "    \"measurementTime\": \"" + iterationMillis + " ms\",\n"
+            + "    \"primaryMetric\": {\n"
+            + "      \"score\": " + number(score) + ",\n"
+            + "      \"scoreError\": " + number(error) + ",\n"
+            + "      \"scoreUnit\": \"ns/op\",\n"
+            + "      \"rawData\": [[" + rawData + "]]\n"
+            + "    },\n"
+            + "    \"secondaryMetrics\": {}\n"
+            + "  }";
+    }
+    
+    private static String number(double d)
+    {
+        return Double.isNaN(d) ? "\"NaN\"" : String.format(Locale.ROOT, "%.6f", d);
+    }
+}
@@ -0,0 +1,187 @@
+package wumpusworld;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares the heap based PathFinder with the previous list based A* from
+ * MyAgent, on worlds where every square is known. The legacy comparator
+ * breaks the sort contract, so run with -Djava.util.Arrays.useLegacyMergeSort=true
+ * on larger grids.
+ */
+public class PathfindingBenchmark
+{
+    private static final int QUERIES = 200;
+    
+    public static void main(String[] args)
+    {
+        for (int size : new int[] {4, 8, 16, 32, 64})
+        {
+            Random rnd = new Random(size);
+            World w = knownWorld(size, rnd);
+            int[][] queries = new int[QUERIES][];
+            for (int i = 0; i < QUERIES; i++)
+            {
+                queries[i] = new int[] {rnd.nextInt(size) + 1, rnd.nextInt(size) + 1, rnd.nextInt(size) + 1, rnd.nextInt(size) + 1};
+            }
+            
+            PathFinder finder = new PathFinder(w);
+            int worse = 0;
+            int better = 0;
+            for (int[] q : queries)
+            {
+                int legacy = cost(w, legacyFindPath(w, q[0], q[1], q[2], q[3]), q[2], q[3]);
+                int heap = cost(w, finder.findPath(q[0], q[1], q[2], q[3]), q[2], q[3]);
+                if (heap > legacy) worse++;
+                if (heap < legacy) better++;
+            }
+            
+            int rounds = Math.max(1, 20000 / (size * size));
+            long legacyTime = time(() -> { for (int[] q : queries) legacyFindPath(w, q[0], q[1], q[2], q[3]); }, rounds);
+            long heapTime = time(() -> { for (int[] q : queries) finder.findPath(q[0], q[1], q[2], q[3]); }, rounds);
+            
+            double n = (double)QUERIES * rounds;
+            System.out.printf("%dx%d: legacy %.0f ns/path, heap %.0f ns/path, %.1fx faster, paths cheaper/costlier than legacy: %d/%d%n",
+                    size, size, legacyTime / n, heapTime / n, (double)legacyTime / heapTime, better, worse);
+        }
+    }
+    
+    /**
+     * Times a task, after running it the same number of rounds as warmup.
+     */
+    private static long time(Runnable task, int rounds)
+    {
+        for (int i = 0; i < rounds; i++) task.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) task.run();
+        return System.nanoTime() - start;
+    }
+    
+    /**
+     * Creates a world where all squares are known, with pits on about
+     * a fifth of the squares.
+     */
+    private static World knownWorld(int size, Random rnd)
+    {
+        String[][] grid = new String[size + 1][size + 1];
+        for (int x = 0; x <= size; x++)
+        {
+            for (int y = 0; y <= size; y++)
+            {
+                grid[x][y] = x == 0 || y == 0 ? World.UNKNOWN : rnd.nextInt(5) == 0 ? World.PIT : "";
+            }
+        }
+        return new World(grid, size, 1, 1, World.DIR_RIGHT);
+    }
+    
+    /**
+     * Returns the cost of a path, counted the same way as PathFinder.
+     */
+    private static int cost(World w, ArrayList<Tile> path, int goalX, int goalY)
+    {
+        if (path == null) return -1;
+        int cost = 0;
+        for (Tile t : path)
+        {
+            cost += !(t.x == goalX && t.y == goalY) && w.hasPit(t.x, t.y) ? 50 : 1;
+        }
+        return cost;
+    }
+    
+    /**
+     * The A* from MyAgent before the PathFinder, kept for comparison.
+     */
+    private static ArrayList<Tile> legacyFindPath(World w, int startX, int startY, int goalX, int goalY)
+    {
+        int offset[][] = new int[][] {{-1, 0}, {1, 0}, {0, 1}, {0, -1}};
+        
+        class Node
+        {
+            public int x;
+            public int y;
+            public int gValue;
+            public int hValue;
+            public Node parent;
+            
+            public Node(int x, int y, int gValue, int hValue)
+            {
+                this.x = x;
+                this.y = y;
+                this.gValue = gValue;
+                this.hValue = hValue;
+            }
+            
+            @Override
+            public boolean equals(Object o)
+            {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                Node node = (Node) o;
+                if (x != node.x) return false;
+                return y == node.y;
+            }
+        }
+        
+        ArrayList<Node> openList = new ArrayList<>();
+        ArrayList<Node> closedList = new ArrayList<>();
+        openList.add(new Node(startX, startY, 0, 0));
+        
+        while (!openList.isEmpty())
+        {
+            Collections.sort(openList, (o1, o2) -> o1.gValue + o1.hValue > o2.gValue + o2.hValue ? 1 : -1);
+            Node currentNode = openList.get(0);
+            openList.remove(0);
+            closedList.add(currentNode);
+            if (currentNode.x == goalX && currentNode.y == goalY)
+            {
+                ArrayList<Tile> pathList = new ArrayList<>();
+                while (currentNode.parent != null)
+                {
+                    pathList.add(new Tile(currentNode.x, currentNode.y));
+                    currentNode = currentNode.parent;
+                }
+                return pathList;
+            }
+            
+            for (int i = 0; i < 4; ++i)
+            {
+                int nextX = currentNode.x + offset[i][0];
+                int nextY = currentNode.y + offset[i][1];
+                if (nextX == goalX && nextY == goalY)
+                {
+                    openList.add(new Node(nextX, nextY, 0, 0));
+                    openList.get(openList.size() - 1).parent = currentNode;
+                    break;
+                }
+                if (w.isValidPosition(nextX, nextY) && !w.isUnknown(nextX, nextY) && !closedList.contains(new Node(nextX, nextY, 0, 0)))
+                {
+                    int gValue = 1;
+                    if (w.hasPit(nextX, nextY))
+                        gValue = 50;
+                    int hValue = Math.abs(goalX - nextX) + Math.abs(goalY - nextY);
+                    
+                    Node newNode = new Node(nextX, nextY, currentNode.gValue + gValue, hValue);
+                    boolean found = false;
+                    for (int j = 0; j < openList.size(); j++)
+                    {
+                        if (openList.get(j).equals(newNode))
+                        {
+                            if (currentNode.gValue + currentNode.hValue < openList.get(j).parent.gValue + openList.get(j).parent.hValue)
+                            {
+                                openList.get(j).parent = currentNode;
+                            }
+                            found = true;
+                        }
+                    }
+                    if (!found)
+                    {
+                        openList.add(newNode);
+                        newNode.parent = currentNode;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,96 @@
+package wumpusworld;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Measures how the agent's cost per decision grows with the size of the
+ * world. For every size it plays random maps from an empty utility table,
+ * and prints the time per decision and per square, decisions per episode,
+ * and the heap used by a world and its agent.
+ * <p>
+ * Arguments are the sizes to measure, default 4 to 1024.
+ */
+public class ScalingBenchmark
+{
+    // Number of decisions to time for every size
+    private static final int DECISIONS = 200000;
+    // Keeps the measured objects reachable
+    private static Object sink;
+    
+    public static void main(String[] args) throws IOException
+    {
+        int[] sizes = {4, 8, 16, 32, 64, 128, 256, 512, 1024};
+        if (args.length > 0)
+        {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+            {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        UtilityTable empty = UtilityTable.load(Files.createTempDirectory("scalingbench").resolve("empty.botdb"));
+        
+        System.out.println("  size  episodes  decisions/episode  ns/decision  ns/decision/square  heap bytes/square");
+        for (int size : sizes)
+        {
+            // Warm up on the same size
+            play(size, empty, DECISIONS / 10, 1000);
+            long start = System.nanoTime();
+            long[] played = play(size, empty, DECISIONS, 0);
+            double ns = (double)(System.nanoTime() - start) / played[1];
+            System.out.printf("%6d  %8d  %17.1f  %11.0f  %18.3f  %17.1f%n", size, played[0], (double)played[1] / played[0],
+                    ns, ns / ((double)size * size), heapPerSquare(size, empty));
+        }
+    }
+    
+    /**
+     * Plays random maps until a number of decisions have been made.
+     * 
+     * @return Number of episodes and number of decisions
+     */
+    private static long[] play(int size, UtilityTable table, int decisions, int firstSeed)
+    {
+        long episodes = 0;
+        long made = 0;
+        for (int seed = firstSeed; made < decisions; seed++)
+        {
+            World w = MapGenerator.getRandomMap(seed, size).generateWorld();
+            Agent a = new MyAgent(w, table.copy());
+            while (!w.gameOver() && made < decisions)
+            {
+                a.doAction();
+                made++;
+            }
+            episodes++;
+        }
+        return new long[] {episodes, made};
+    }
+    
+    /**
+     * Estimates the heap used by a world and its agent, per square.
+     */
+    private static double heapPerSquare(int size, UtilityTable table)
+    {
+        Runtime rt = Runtime.getRuntime();
+        Object[] keep = new Object[8];
+        long before = usedHeap(rt);
+        for (int i = 0; i < keep.length; i++)
+        {
+            World w = new World(size);
+            keep[i] = new Object[] {w, new MyAgent(w, table)};
+        }
+        long after = usedHeap(rt);
+        sink = keep;
+        return (double)(after - before) / keep.length / ((double)size * size);
+    }
+    
+    private static long usedHeap(Runtime rt)
+    {
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,125 @@
+package wumpusworld;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Measures what canonical bitmasks (see Symmetry) do to the utility table:
+ * the size of the shipped database after migration, and the table size
+ * and average score while an agent learns from an empty table, with
+ * legacy and with canonical bitmasks. Then the legacy table is migrated
+ * and compared with the canonical table on maps neither has played, and
+ * both learn on over new maps.
+ */
+public class SymmetryBenchmark
+{
+    private static final int EPISODES = 200000;
+    private static final int WINDOW = 20000;
+    private static final int EVALUATION_EPISODES = 100000;
+    
+    public static void main(String[] args) throws IOException
+    {
+        Path shipped = Paths.get(args.length > 0 ? args[0] : "database.botdb");
+        UtilityTable legacy = UtilityTable.load(shipped);
+        IntIntMap migrated = Symmetry.migrate(UtilityIndex.empty(), copyOf(legacy, shipped));
+        System.out.println("Shipped database: " + legacy.size() + " legacy values, "
+                + migrated.size() + " canonical values");
+        
+        Path dir = Files.createTempDirectory("symmetrybench");
+        UtilityTable legacyLearned = UtilityTable.load(dir.resolve("legacy.botdb"));
+        UtilityTable canonicalLearned = UtilityTable.load(dir.resolve("canonical.botdb")).migrateToCanonical();
+        learn("legacy", legacyLearned, 0);
+        learn("canonical", canonicalLearned, 0);
+        
+        // Migrated values should be on the same scale as learned ones
+        legacyLearned.save();
+        canonicalLearned.save();
+        System.out.println("evaluation:");
+        System.out.println("  table      size  mean |utility|  average score");
+        evaluate("legacy", legacyLearned, dir.resolve("legacy.botdb"));
+        UtilityTable migratedLearned = legacyLearned.migrateToCanonical();
+        evaluate("migrated", migratedLearned, dir.resolve("legacy.botdb"));
+        evaluate("canonical", canonicalLearned, dir.resolve("canonical.botdb"));
+        
+        int firstSeed = EPISODES + EVALUATION_EPISODES;
+        learn("migrated, learning on", migratedLearned, firstSeed);
+        learn("canonical, learning on", canonicalLearned, firstSeed);
+    }
+    
+    /**
+     * Lets read-only agents play random maps that were not learned from,
+     * printing the table size, the mean magnitude of its utility values
+     * and the average score.
+     */
+    private static void evaluate(String name, UtilityTable table, Path path) throws IOException
+    {
+        IntIntMap values = copyOf(table, path);
+        long magnitude = 0;
+        IntIntMap.Cursor entry = values.cursor();
+        while (entry.next())
+        {
+            magnitude += Math.abs(entry.value());
+        }
+        
+        long score = 0;
+        for (int i = EPISODES; i < EPISODES + EVALUATION_EPISODES; i++)
+        {
+            World w = MapGenerator.getRandomMap(i).generateWorld();
+            Agent a = new MyAgent(w, new UtilityOverlay(table));
+            while (!w.gameOver())
+            {
+                a.doAction();
+            }
+            score += w.getScore();
+        }
+        System.out.printf("  %-9s  %4d  %14.1f  %13.1f%n", name, values.size(), (double)magnitude / values.size(),
+                (double)score / EVALUATION_EPISODES);
+    }
+    
+    /**
+     * Lets an agent learn over a stream of random maps, printing the
+     * table size and average score for every window of episodes.
+     */
+    private static void learn(String name, UtilityTable table, int firstSeed)
+    {
+        System.out.println(name + ":");
+        System.out.println("  episodes  table size  average score  ms");
+        long score = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < EPISODES; i++)
+        {
+            World w = MapGenerator.getRandomMap(firstSeed + i).generateWorld();
+            Agent a = new MyAgent(w, table);
+            while (!w.gameOver())
+            {
+                a.doAction();
+            }
+            score += w.getScore();
+            if ((i + 1) % WINDOW == 0)
+            {
+                long now = System.nanoTime();
+                System.out.printf("  %8d  %10d  %13.1f  %d%n", i + 1, table.size(), (double)score / WINDOW, (now - start) / 1000000);
+                score = 0;
+                start = now;
+            }
+        }
+    }
+    
+    /**
+     * Reads all values of a database file into a map.
+     */
+    private static IntIntMap copyOf(UtilityTable table, Path path) throws IOException
+    {
+        if (!UtilityIndex.isIndexed(path))
+            return UtilityIndex.readLegacy(path);
+        UtilityIndex index = UtilityIndex.open(path);
+        IntIntMap values = new IntIntMap(index.size());
+        for (int i = 0; i < index.size(); i++)
+        {
+            values.put(index.keyAt(i), index.valueAt(i));
+        }
+        return values;
+    }
+}
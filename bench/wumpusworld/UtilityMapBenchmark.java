@@ -0,0 +1,148 @@
+package wumpusworld;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Compares IntIntMap with HashMap&lt;Integer, Integer&gt; as the utility store:
+ * lookups, inserts and heap memory per entry.
+ */
+public class UtilityMapBenchmark
+{
+    private static final int ROUNDS = 50;
+    
+    public static void main(String[] args)
+    {
+        // 5000 entries is about the size of the shipped database
+        for (int entries : new int[] {5000, 200000})
+        {
+            int[] keys = randomMasks(entries, 1);
+            int[] probes = randomMasks(entries, 2);
+            // Half of the probes are hits
+            System.arraycopy(keys, 0, probes, 0, entries / 2);
+            
+            System.out.println("Entries: " + entries);
+            benchmark(keys, probes);
+            System.out.printf("  memory HashMap:   %.1f bytes/entry%n", bytesPerEntry(keys, false));
+            System.out.printf("  memory IntIntMap: %.1f bytes/entry%n", bytesPerEntry(keys, true));
+        }
+    }
+    
+    /**
+     * Times inserts and lookups for both maps.
+     * 
+     * @param keys Keys to insert
+     * @param probes Keys to look up
+     */
+    private static void benchmark(int[] keys, int[] probes)
+    {
+        long hashInsert = 0, hashGet = 0, intInsert = 0, intGet = 0;
+        long sink = 0;
+        for (int round = -ROUNDS; round < ROUNDS; round++)
+        {
+            long t0 = System.nanoTime();
+            HashMap<Integer, Integer> hashMap = new HashMap<>();
+            for (int k : keys) hashMap.put(k, k >>> 3);
+            long t1 = System.nanoTime();
+            for (int k : probes)
+            {
+                Integer v = hashMap.get(k);
+                if (v != null) sink += v;
+            }
+            long t2 = System.nanoTime();
+            IntIntMap intMap = new IntIntMap();
+            for (int k : keys) intMap.put(k, k >>> 3);
+            long t3 = System.nanoTime();
+            for (int k : probes) sink += intMap.get(k, 0);
+            long t4 = System.nanoTime();
+            
+            // Negative rounds are warmup
+            if (round >= 0)
+            {
+                hashInsert += t1 - t0;
+                hashGet += t2 - t1;
+                intInsert += t3 - t2;
+                intGet += t4 - t3;
+            }
+        }
+        double inserts = (double)keys.length * ROUNDS;
+        double gets = (double)probes.length * ROUNDS;
+        System.out.printf("  insert HashMap:   %.2f ns/op%n", hashInsert / inserts);
+        System.out.printf("  insert IntIntMap: %.2f ns/op%n", intInsert / inserts);
+        System.out.printf("  get HashMap:      %.2f ns/op%n", hashGet / gets);
+        System.out.printf("  get IntIntMap:    %.2f ns/op%n", intGet / gets);
+        System.out.println("  (checksum " + sink + ")");
+    }
+    
+    /**
+     * Estimates the heap used per entry by filling several maps.
+     * 
+     * @param keys Keys to insert
+     * @param primitive True to measure IntIntMap, false for HashMap
+     * @return Bytes per entry
+     */
+    private static double bytesPerEntry(int[] keys, boolean primitive)
+    {
+        final int copies = Math.max(1, 2000000 / keys.length);
+        Object[] maps = new Object[copies];
+        long before = usedMemory();
+        for (int c = 0; c < copies; c++)
+        {
+            if (primitive)
+            {
+                IntIntMap m = new IntIntMap();
+                for (int k : keys) m.put(k, k >>> 3);
+                maps[c] = m;
+            }
+            else
+            {
+                HashMap<Integer, Integer> m = new HashMap<>();
+                for (int k : keys) m.put(k, k >>> 3);
+                maps[c] = m;
+            }
+        }
+        long after = usedMemory();
+        if (maps[copies - 1] == null) throw new IllegalStateException();
+        return (after - before) / ((double)copies * keys.length);
+    }
+    
+    /**
+     * Returns the used heap after garbage collection.
+     * 
+     * @return Used heap in bytes
+     */
+    private static long usedMemory()
+    {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+        {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+    
+    /**
+     * Creates distinct random utility bitmasks.
+     * 
+     * @param n Number of bitmasks
+     * @param seed Random seed
+     * @return Bitmasks with the marker bit 18 set
+     */
+    private static int[] randomMasks(int n, long seed)
+    {
+        Random rnd = new Random(seed);
+        IntIntMap seen = new IntIntMap(n);
+        int[] masks = new int[n];
+        int i = 0;
+        while (i < n)
+        {
+            int m = rnd.nextInt(1 << 27) | (1 << 18);
+            if (!seen.containsKey(m))
+            {
+                seen.put(m, 0);
+                masks[i++] = m;
+            }
+        }
+        return masks;
+    }
+}
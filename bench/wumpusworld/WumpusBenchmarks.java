@@ -0,0 +1,297 @@
+package wumpusworld;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Benchmark suite for the Wumpus World: percept queries, action execution,
+ * mask building, pathfinding, utility database load and save, and full
+ * episodes. All worlds come from fixed MapGenerator seeds, so runs are
+ * comparable between changes.
+ * <p>
+ * Arguments are passed to {@link Bench}, e.g. "-i 10 -o out.json MyAgent".
+ */
+public class WumpusBenchmarks
+{
+    // Number of seeded maps used by the episode benchmark
+    private static final int MAPS = 1000;
+    // Number of entries in the benchmark utility database, about the size of the shipped one
+    private static final int DATABASE_ENTRIES = 5000;
+    
+    public static void main(String[] args) throws IOException
+    {
+        Bench bench = new Bench(args);
+        final WorldMap[] maps = new WorldMap[MAPS];
+        for (int i = 0; i < MAPS; i++)
+        {
+            maps[i] = MapGenerator.getRandomMap(i);
+        }
+        final World revealed = revealedWorld(maps[42]);
+        final int size = revealed.getSize();
+        
+        // Percept queries, 5 per square
+        bench.run("World.percepts", size * size * 5, () ->
+        {
+            int n = 0;
+            for (int x = 1; x <= size; x++)
+            {
+                for (int y = 1; y <= size; y++)
+                {
+                    if (revealed.hasBreeze(x, y)) n++;
+                    if (revealed.hasStench(x, y)) n++;
+                    if (revealed.hasPit(x, y)) n++;
+                    if (revealed.hasWumpus(x, y)) n++;
+                    if (revealed.isUnknown(x, y)) n++;
+                }
+            }
+            return n;
+        });
+        
+        // Action execution, restarting the map when the game ends
+        final int[] actions = new int[1024];
+        final int[] actionSet = {World.ACTION_MOVE, World.ACTION_TURN_LEFT, World.ACTION_TURN_RIGHT, World.ACTION_CLIMB};
+        Random rnd = new Random(1977);
+        for (int i = 0; i < actions.length; i++)
+        {
+            actions[i] = actionSet[rnd.nextInt(actionSet.length)];
+        }
+        bench.run("World.doAction", actions.length, () ->
+        {
+            World w = maps[7].generateWorld();
+            for (int a : actions)
+            {
+                w.doAction(a);
+                if (w.gameOver())
+                    w = maps[7].generateWorld();
+            }
+            return w.getScore();
+        });
+        
+        // Lookahead: snapshot, try a move, restore. Batched, since timing a
+        // single call costs more than the call
+        final World planned = maps[7].generateWorld();
+        bench.run("World.snapshotRestore", 64, () ->
+        {
+            int n = 0;
+            for (int i = 0; i < 64; i++)
+            {
+                World.Snapshot s = planned.snapshot();
+                planned.doAction(World.ACTION_MOVE);
+                n += planned.getScore();
+                planned.restore(s);
+            }
+            return n;
+        });
+        final World[] clones = new World[64];
+        bench.run("World.cloneWorld", 64, () ->
+        {
+            for (int i = 0; i < 64; i++)
+            {
+                clones[i] = planned.cloneWorld();
+            }
+            return clones[63].getScore();
+        });
+        final World journaled = maps[7].generateWorld();
+        journaled.startJournal();
+        bench.run("World.doActionUndo", 64, () ->
+        {
+            int n = 0;
+            for (int i = 0; i < 64; i++)
+            {
+                journaled.doAction(World.ACTION_MOVE);
+                n += journaled.getScore();
+                journaled.undo();
+            }
+            return n;
+        });
+        
+        // Mask building for every square
+        final Path dir = Files.createTempDirectory("wumpusbench");
+        final UtilityTable empty = UtilityTable.load(dir.resolve("empty.botdb"));
+        final MyAgent agent = new MyAgent(revealed, empty.copy());
+        final Tile[] tiles = new Tile[size * size];
+        for (int i = 0; i < tiles.length; i++)
+        {
+            tiles[i] = new Tile(i / size + 1, i % size + 1);
+        }
+        bench.run("MyAgent.MakeMask", tiles.length, () ->
+        {
+            int n = 0;
+            for (Tile t : tiles) n += agent.MakeMask(t);
+            return n;
+        });
+        
+        // Pathfinding between fixed pairs of squares
+        for (int gridSize : new int[] {4, 16, 64})
+        {
+            final PathFinder finder = new PathFinder(knownGrid(gridSize, new Random(gridSize)));
+            final int[] queries = new int[4 * 64];
+            Random q = new Random(gridSize + 1);
+            for (int i = 0; i < queries.length; i++)
+            {
+                queries[i] = q.nextInt(gridSize) + 1;
+            }
+            bench.run("PathFinder.findPath." + gridSize + "x" + gridSize, queries.length / 4, () ->
+            {
+                int n = 0;
+                for (int i = 0; i < queries.length; i += 4)
+                {
+                    n += finder.findPath(queries[i], queries[i + 1], queries[i + 2], queries[i + 3]).size();
+                }
+                return n;
+            });
+        }
+        
+        // Utility database load and save
+        final Path legacy = dir.resolve("legacy.botdb");
+        final Path indexed = dir.resolve("indexed.botdb");
+        final Path saved = dir.resolve("saved.botdb");
+        IntIntMap values = randomTable(DATABASE_ENTRIES);
+        writeLegacy(legacy, values);
+        UtilityTable.writeUtilityValues(indexed, UtilityIndex.empty(), values, 0);
+        bench.run("UtilityIndex.readLegacy", 1, () -> readLegacy(legacy).size());
+        bench.run("UtilityTable.load", 1, () -> UtilityTable.load(indexed).size());
+        bench.run("UtilityTable.save", 1, () ->
+        {
+            try
+            {
+                UtilityTable.writeUtilityValues(saved, UtilityIndex.empty(), values, 0);
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            return 0;
+        });
+        final UtilityTable table = UtilityTable.load(indexed);
+        final int[] masks = new int[1024];
+        IntIntMap.Cursor entry = values.cursor();
+        for (int i = 0; i < masks.length && entry.next(); i++)
+        {
+            masks[i] = entry.key();
+        }
+        bench.run("UtilityTable.getUtility", masks.length, () ->
+        {
+            int n = 0;
+            for (int m : masks) n += table.getUtility(m);
+            return n;
+        });
+        
+        // Full episodes over the seeded maps, each from an empty table
+        final int[] next = {0};
+        bench.run("MyAgent.episode", 1, () ->
+        {
+            World w = maps[next[0]++ % MAPS].generateWorld();
+            Agent a = new MyAgent(w, empty.copy());
+            while (!w.gameOver())
+            {
+                a.doAction();
+            }
+            return w.getScore();
+        });
+        
+        bench.writeResults();
+    }
+    
+    /**
+     * Creates a world from a map with every square revealed.
+     */
+    private static World revealedWorld(WorldMap map)
+    {
+        int size = map.getSize();
+        String[][] grid = new String[size + 1][size + 1];
+        for (int x = 0; x <= size; x++)
+        {
+            for (int y = 0; y <= size; y++)
+            {
+                grid[x][y] = x == 0 || y == 0 ? World.UNKNOWN : "";
+            }
+        }
+        mark(grid, map.getWumpus().x, map.getWumpus().y, World.WUMPUS, World.STENCH);
+        grid[map.getGold().x][map.getGold().y] += World.GLITTER;
+        for (java.awt.Point p : map.getPits())
+        {
+            mark(grid, p.x, p.y, World.PIT, World.BREEZE);
+        }
+        return new World(grid, size, 1, 1, World.DIR_RIGHT);
+    }
+    
+    /**
+     * Adds an item to a square, and its percept to the surrounding squares.
+     */
+    private static void mark(String[][] grid, int x, int y, String item, String percept)
+    {
+        int size = grid.length - 1;
+        grid[x][y] += item;
+        int[][] offset = {{-1, 0}, {1, 0}, {0, 1}, {0, -1}};
+        for (int[] o : offset)
+        {
+            int nx = x + o[0];
+            int ny = y + o[1];
+            if (nx >= 1 && ny >= 1 && nx <= size && ny <= size && !grid[nx][ny].contains(percept))
+                grid[nx][ny] += percept;
+        }
+    }
+    
+    /**
+     * Creates a world where all squares are known, with pits on about
+     * a fifth of the squares.
+     */
+    private static World knownGrid(int size, Random rnd)
+    {
+        String[][] grid = new String[size + 1][size + 1];
+        for (int x = 0; x <= size; x++)
+        {
+            for (int y = 0; y <= size; y++)
+            {
+                grid[x][y] = x == 0 || y == 0 ? World.UNKNOWN : rnd.nextInt(5) == 0 ? World.PIT : "";
+            }
+        }
+        return new World(grid, size, 1, 1, World.DIR_RIGHT);
+    }
+    
+    /**
+     * Creates a utility table with random bitmasks.
+     */
+    private static IntIntMap randomTable(int entries)
+    {
+        Random rnd = new Random(entries);
+        IntIntMap values = new IntIntMap(entries);
+        while (values.size() < entries)
+        {
+            values.put(rnd.nextInt(1 << 27) | (1 << 18), rnd.nextInt(2000) - 1000);
+        }
+        return values;
+    }
+    
+    /**
+     * Writes a utility table in the legacy database format.
+     */
+    private static void writeLegacy(Path path, IntIntMap values) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile()))))
+        {
+            out.writeInt(values.size());
+            IntIntMap.Cursor entry = values.cursor();
+            while (entry.next())
+            {
+                out.writeInt(entry.key());
+                out.writeInt(entry.value());
+            }
+        }
+    }
+    
+    private static IntIntMap readLegacy(Path path)
+    {
+        try
+        {
+            return UtilityIndex.readLegacy(path);
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package wumpusworld;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets an agent play a Wumpus World on a background thread, so the GUI
+ * stays responsive however slow the agent's decisions are. After every
+ * decision the worker publishes a snapshot of the world, replacing any
+ * snapshot the GUI has not taken yet, so the GUI always shows the latest
+ * state and skips the frames it is too slow to show.
+ * <p>
+ * The world and the agent belong to the worker until it has stopped, see
+ * stop(). The GUI only reads the published snapshots.
+ */
+public class Autoplay
+{
+    private final World w;
+    private final Agent agent;
+    private final long delay;
+    
+    private final Object lock = new Object();
+    private boolean paused;
+    private boolean stopped = false;
+    // Decisions to make while paused
+    private int steps = 0;
+    private final Thread worker;
+    
+    private final AtomicReference<World.Snapshot> latest = new AtomicReference<>();
+    private volatile int published = 0;
+    private volatile boolean finished = false;
+    
+    /**
+     * Starts letting an agent play a world.
+     * 
+     * @param w The world, not to be touched until the autoplay has stopped
+     * @param agent The agent playing the world
+     * @param delay Milliseconds to wait between decisions
+     * @param paused True to start paused, waiting for step() or resume()
+     */
+    public Autoplay(World w, Agent agent, long delay, boolean paused)
+    {
+        this.w = w;
+        this.agent = agent;
+        this.delay = delay;
+        this.paused = paused;
+        worker = new Thread(this::run, "Autoplay");
+        worker.setDaemon(true);
+        worker.start();
+    }
+    
+    /**
+     * Pauses the agent after its current decision.
+     */
+    public void pause()
+    {
+        synchronized (lock)
+        {
+            paused = true;
+        }
+    }
+    
+    /**
+     * Lets the agent play on after a pause.
+     */
+    public void resume()
+    {
+        synchronized (lock)
+        {
+            paused = false;
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Lets a paused agent make one more decision.
+     */
+    public void step()
+    {
+        synchronized (lock)
+        {
+            paused = true;
+            steps++;
+            lock.notifyAll();
+        }
+    }
+    
+    /**
+     * Checks if the agent is paused.
+     * 
+     * @return True if paused
+     */
+    public boolean isPaused()
+    {
+        synchronized (lock)
+        {
+            return paused;
+        }
+    }
+    
+    /**
+     * Stops the agent and waits until its current decision is done. The
+     * world can be used again when this returns.
+     */
+    public void stop()
+    {
+        synchronized (lock)
+        {
+            stopped = true;
+            lock.notifyAll();
+        }
+        try
+        {
+            worker.join();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Checks if the worker has finished, because the game is over or the
+     * autoplay was stopped.
+     * 
+     * @return True if finished
+     */
+    public boolean isFinished()
+    {
+        return finished;
+    }
+    
+    /**
+     * Takes the latest snapshot of the world, if one was published since
+     * the last call.
+     * 
+     * @return The snapshot, or null if there is no new one
+     */
+    public World.Snapshot takeSnapshot()
+    {
+        return latest.getAndSet(null);
+    }
+    
+    /**
+     * Returns the number of snapshots published, one per decision.
+     * 
+     * @return Number of snapshots
+     */
+    public int getPublished()
+    {
+        return published;
+    }
+    
+    /**
+     * Worker loop. Makes decisions until the game is over or the
+     * autoplay is stopped, waiting while paused.
+     */
+    private void run()
+    {
+        try
+        {
+            // Earliest time of the next decision
+            long next = 0;
+            while (!w.gameOver())
+            {
+                synchronized (lock)
+                {
+                    while (!stopped)
+                    {
+                        if (paused && steps == 0)
+                        {
+                            lock.wait();
+                            continue;
+                        }
+                        // A step is made at once, playing waits for the delay
+                        long left = next - System.currentTimeMillis();
+                        if (steps > 0 || left <= 0)
+                            break;
+                        lock.wait(left);
+                    }
+                    if (stopped)
+                        return;
+                    if (steps > 0)
+                        steps--;
+                }
+                
+                agent.doAction();
+                latest.set(w.snapshot());
+                published++;
+                next = System.currentTimeMillis() + delay;
+            }
+        }
+        catch (InterruptedException ex)
+        {
+            // Stop playing
+        }
+        catch (RuntimeException ex)
+        {
+            ex.printStackTrace();
+        }
+        finally
+        {
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package wumpusworld;
+
+import javax.imageio.ImageIO;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Custom-painted board of the Wumpus World GUI. The board remembers the
+ * state of every square, and update() only repaints the squares whose
+ * state changed since the last update. Each distinct square state is
+ * rendered once into an image the size of a square, so painting a square
+ * is a single image copy.
+ * <p>
+ * The sprites of a square are laid out in a 2x2 grid, or 3x3 if there are
+ * more than four: pit, breeze, stench, Wumpus, glitter and player, in that
+ * order. Unknown squares have a gray background. Works for worlds of any
+ * size, the squares shrink to fit the board.
+ * <p>
+ * Must only be used from the event dispatch thread.
+ */
+public class BoardPanel extends JComponent
+{
+    private static final long serialVersionUID = 1L;
+    
+    // Square state bits, the player's direction is stored above them
+    private static final int S_PIT = 1;
+    private static final int S_BREEZE = 2;
+    private static final int S_STENCH = 4;
+    private static final int S_WUMPUS = 8;
+    private static final int S_GLITTER = 16;
+    private static final int S_UNKNOWN = 32;
+    private static final int S_PLAYER = 64;
+    private static final int S_DIR_SHIFT = 7;
+    
+    // Sprites in the order they are laid out, then the player by direction
+    private static final String[] SPRITE_FILES = {"P", "B", "S", "W", "G", "PU", "PR", "PD", "PL"};
+    private static final int SPRITE_PLAYER = 5;
+    
+    private final BufferedImage[] sprites = new BufferedImage[SPRITE_FILES.length];
+    
+    // Size of the world and state of every square, x-major from (1,1)
+    private int size = 0;
+    private int[] states = new int[0];
+    
+    // Rendered squares by state, for squares of cachedWidth x cachedHeight
+    private final Map<Integer, Image> squareImages = new HashMap<>();
+    private int cachedWidth = 0;
+    private int cachedHeight = 0;
+    
+    /**
+     * Creates the board, loading the sprites from the gfx folder.
+     * 
+     * @param width Preferred width in pixels
+     * @param height Preferred height in pixels
+     */
+    public BoardPanel(int width, int height)
+    {
+        for (int i = 0; i < SPRITE_FILES.length; i++)
+        {
+            try
+            {
+                sprites[i] = ImageIO.read(new File("gfx/" + SPRITE_FILES[i] + ".png"));
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+        setPreferredSize(new Dimension(width, height));
+        setOpaque(true);
+    }
+    
+    /**
+     * Updates the board to a new world state, repainting only the squares
+     * that changed. A world of another size repaints the whole board.
+     * 
+     * @param w The world to show
+     */
+    public void update(World w)
+    {
+        int newSize = w.getSize();
+        if (newSize != size)
+        {
+            size = newSize;
+            states = new int[size * size];
+            for (int x = 1; x <= size; x++)
+            {
+                for (int y = 1; y <= size; y++)
+                {
+                    states[(x - 1) * size + (y - 1)] = squareState(w, x, y);
+                }
+            }
+            repaint();
+            return;
+        }
+        
+        for (int x = 1; x <= size; x++)
+        {
+            for (int y = 1; y <= size; y++)
+            {
+                int i = (x - 1) * size + (y - 1);
+                int state = squareState(w, x, y);
+                if (state != states[i])
+                {
+                    states[i] = state;
+                    repaint(squareBounds(x, y));
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the state of a square as a combination of the S_ bits.
+     * 
+     * @param w The world
+     * @param x X position
+     * @param y Y position
+     * @return State of the square
+     */
+    private static int squareState(World w, int x, int y)
+    {
+        int state = 0;
+        if (w.hasPit(x, y)) state |= S_PIT;
+        if (w.hasBreeze(x, y)) state |= S_BREEZE;
+        if (w.hasStench(x, y)) state |= S_STENCH;
+        if (w.hasWumpus(x, y)) state |= S_WUMPUS;
+        if (w.hasGlitter(x, y)) state |= S_GLITTER;
+        if (w.isUnknown(x, y)) state |= S_UNKNOWN;
+        if (w.hasPlayer(x, y)) state |= S_PLAYER | w.getDirection() << S_DIR_SHIFT;
+        return state;
+    }
+    
+    /**
+     * Returns the area of the board covered by a square. Squares share
+     * the board's pixels evenly, with (1,1) in the lower left corner.
+     * 
+     * @param x X position
+     * @param y Y position
+     * @return The square's bounds
+     */
+    private Rectangle squareBounds(int x, int y)
+    {
+        int left = (x - 1) * getWidth() / size;
+        int right = x * getWidth() / size;
+        int top = (size - y) * getHeight() / size;
+        int bottom = (size - y + 1) * getHeight() / size;
+        return new Rectangle(left, top, right - left, bottom - top);
+    }
+    
+    @Override
+    protected void paintComponent(Graphics g)
+    {
+        g.setColor(Color.GRAY);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        if (size == 0)
+            return;
+        
+        // Cached squares only fit squares of the same size
+        int width = getWidth() / size;
+        int height = getHeight() / size;
+        if (width != cachedWidth || height != cachedHeight)
+        {
+            squareImages.clear();
+            cachedWidth = width;
+            cachedHeight = height;
+        }
+        
+        Rectangle clip = g.getClipBounds();
+        for (int x = 1; x <= size; x++)
+        {
+            for (int y = 1; y <= size; y++)
+            {
+                Rectangle r = squareBounds(x, y);
+                if (clip != null && !clip.intersects(r))
+                    continue;
+                int state = states[(x - 1) * size + (y - 1)];
+                Image image = squareImages.get(state);
+                if (image == null)
+                {
+                    image = renderSquare(state, width, height);
+                    squareImages.put(state, image);
+                }
+                // Squares can differ by a pixel, the background fills the gap
+                g.drawImage(image, r.x, r.y, null);
+            }
+        }
+    }
+    
+    /**
+     * Renders a square with a given state.
+     * 
+     * @param state State of the square
+     * @param width Width in pixels
+     * @param height Height in pixels
+     * @return Image of the square
+     */
+    private Image renderSquare(int state, int width, int height)
+    {
+        Image image = getGraphicsConfiguration() != null
+                ? getGraphicsConfiguration().createCompatibleImage(width, height)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = (Graphics2D)image.getGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setColor((state & S_UNKNOWN) != 0 ? Color.GRAY : Color.WHITE);
+        g.fillRect(0, 0, width, height);
+        
+        // Sprites are drawn at their own size, or smaller if their slot is too small
+        BufferedImage[] shown = new BufferedImage[SPRITE_PLAYER + 1];
+        int count = 0;
+        for (int i = 0; i < SPRITE_PLAYER; i++)
+        {
+            if ((state & (1 << i)) != 0)
+                shown[count++] = sprites[i];
+        }
+        if ((state & S_PLAYER) != 0)
+            shown[count++] = sprites[SPRITE_PLAYER + (state >>> S_DIR_SHIFT)];
+        int grid = count <= 4 ? 2 : 3;
+        int slotWidth = width / grid;
+        int slotHeight = height / grid;
+        for (int slot = 0; slot < count; slot++)
+        {
+            BufferedImage sprite = shown[slot];
+            if (sprite == null)
+                continue;
+            double scale = Math.min(1.0, Math.min((double)slotWidth / sprite.getWidth(), (double)slotHeight / sprite.getHeight()));
+            int w = (int)(sprite.getWidth() * scale);
+            int h = (int)(sprite.getHeight() * scale);
+            int left = (slot % grid) * slotWidth + (slotWidth - w) / 2;
+            int top = (slot / grid) * slotHeight + (slotHeight - h) / 2;
+            g.drawImage(sprite, left, top, w, h, null);
+        }
+        
+        g.setColor(Color.BLACK);
+        g.drawRect(0, 0, width - 1, height - 1);
+        g.dispose();
+        return image;
+    }
+}
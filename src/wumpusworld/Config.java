@@ -1,46 +1,129 @@
 package wumpusworld;
 
 import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
- * Reads the config.txt settings file.
+ * The run configuration. Settings are read once from the config.txt
+ * settings file, and can be overridden on the command line with
+ * arguments like 'Threads=4' or '--threads=4'. Setting names are not
+ * case sensitive.
  * 
  * @author admin
  */
 public class Config 
 {
+    private static final String configFileName = "config.txt";
+    private static Config current;
+    
+    private final String option;
+    private final String mapfile;
+    private final String database;
+    private final int threads;
+    private final int flushInterval;
+    private final int flushEpisodes;
+    private final String persistence;
+    private final int compactInterval;
+    private final int episodes;
+    private final int seed;
+    private final int size;
+    private final int checkpointInterval;
+    private final int reportInterval;
+    private final boolean reflect;
+    private final boolean canonical;
+    private final boolean metrics;
+    private final int frameRate;
+    private final int autoplayDelay;
+    
     /**
-     * Checks the options for the application ('gui', 'sim' or 'simdb').
+     * Creates a configuration from parsed settings.
      * 
-     * @return Option. Default is 'gui'. 
+     * @param settings Settings with lower case names
      */
-    public static String getOption()
+    private Config(Map<String, String> settings)
+    {
+        option = parseOption(get(settings, "option", "gui"));
+        mapfile = get(settings, "mapfile", "");
+        database = get(settings, "database", "database.botdb");
+        threads = getInt(settings, "threads", 0, 0);
+        flushInterval = getInt(settings, "flushinterval", 0, 0);
+        flushEpisodes = getInt(settings, "flushepisodes", 0, 0);
+        persistence = get(settings, "persistence", "rewrite").equalsIgnoreCase("log") ? "log" : "rewrite";
+        compactInterval = getInt(settings, "compactinterval", 60000, 0);
+        episodes = getInt(settings, "episodes", 1000000, 0);
+        seed = getInt(settings, "seed", 0, Integer.MIN_VALUE);
+        size = getInt(settings, "size", 4, 2);
+        checkpointInterval = getInt(settings, "checkpointinterval", 60000, 0);
+        reportInterval = getInt(settings, "reportinterval", 5000, 0);
+        reflect = getBoolean(settings, "reflect", false);
+        canonical = getBoolean(settings, "canonical", false);
+        metrics = getBoolean(settings, "metrics", false);
+        frameRate = getInt(settings, "framerate", 30, 1);
+        autoplayDelay = getInt(settings, "autoplaydelay", 0, 0);
+    }
+    
+    /**
+     * Loads the configuration from the config file and the command line
+     * arguments, which take precedence. Must be called before any setting
+     * is read, otherwise the config file alone is used.
+     * 
+     * @param args Command line arguments, each 'Name=value' or '--name=value'
+     */
+    public static synchronized void load(String[] args)
     {
-        String option = "gui";
+        Map<String, String> settings = new HashMap<>();
         try
         {
-            BufferedReader r = new BufferedReader(new FileReader("config.txt"));
+            BufferedReader r = new BufferedReader(new FileReader(configFileName));
             String line = r.readLine();
             while (line != null)
             {
-                if (line.startsWith("Option="))
-                {
-                    String[] tokens = line.split("=");
-                    if (tokens[1].equalsIgnoreCase("gui")) option = "gui";
-                    if (tokens[1].equalsIgnoreCase("sim")) option = "sim";
-                    if (tokens[1].equalsIgnoreCase("simulator")) option = "sim";
-                    if (tokens[1].equalsIgnoreCase("simdb")) option = "simdb";
-                    if (tokens[1].equalsIgnoreCase("simulatordb")) option = "simdb";
-                }
+                parseSetting(settings, line);
                 line = r.readLine();
             }
             r.close();
         }
-        catch (Exception ex)
+        catch (FileNotFoundException ex)
+        {
+            // No config file, use defaults
+        }
+        catch (IOException ex)
+        {
+            ex.printStackTrace();
+        }
+        
+        for (String arg : args)
         {
-            option = "gui";
+            String setting = arg.startsWith("--") ? arg.substring(2) : arg;
+            if (!parseSetting(settings, setting))
+                System.err.println("Ignoring argument '" + arg + "', expected Name=value");
         }
-        return option;
+        current = new Config(settings);
+    }
+    
+    /**
+     * Returns the loaded configuration, loading it from the config file
+     * if that has not been done yet.
+     * 
+     * @return The configuration
+     */
+    private static synchronized Config current()
+    {
+        if (current == null)
+            load(new String[0]);
+        return current;
+    }
+    
+    /**
+     * Checks the options for the application ('gui', 'sim', 'simdb', 'train',
+     * 'exhaustive' or 'evaluate').
+     * 
+     * @return Option. Default is 'gui'.
+     */
+    public static String getOption()
+    {
+        return current().option;
     }
     
     /**
@@ -50,26 +133,289 @@ public class Config
      */
     public static String getMapfile()
     {
-        String mapfile = "";
+        return current().mapfile;
+    }
+    
+    /**
+     * Returns the path to the utility database file.
+     * 
+     * @return Path to the database file. Default is 'database.botdb'.
+     */
+    public static String getDatabase()
+    {
+        return current().database;
+    }
+    
+    /**
+     * Returns the number of worker threads. The simulator plays episodes
+     * ahead on this many threads, but keeps learning between episodes as
+     * the sequential simulator does, with the same scores. The exhaustive
+     * and parallel evaluations play from the utility database as it was
+     * loaded and write nothing back. Either way the result does not depend
+     * on the number of threads.
+     * 
+     * @return Number of threads, or 0 for the sequential simulator and one
+     * evaluation thread per processor. Default is 0.
+     */
+    public static int getThreads()
+    {
+        return current().threads;
+    }
+    
+    /**
+     * Returns how often, in milliseconds, the agent's utility values are
+     * written to the database file in the background. With 0, and no
+     * episode count set, the database file is rewritten after every
+     * decision.
+     * 
+     * @return Flush interval in milliseconds. Default is 0.
+     */
+    public static int getFlushInterval()
+    {
+        return current().flushInterval;
+    }
+    
+    /**
+     * Returns after how many finished episodes the agent's utility
+     * values are written to the database file in the background.
+     * 
+     * @return Number of episodes, or 0 to not flush on episode count. Default is 0.
+     */
+    public static int getFlushEpisodes()
+    {
+        return current().flushEpisodes;
+    }
+    
+    /**
+     * Returns how changes to the utility database are persisted: 'rewrite'
+     * writes the whole database file, 'log' appends each change to a log
+     * that is compacted into the database file in the background.
+     * 
+     * @return Persistence mode. Default is 'rewrite'.
+     */
+    public static String getPersistence()
+    {
+        return current().persistence;
+    }
+    
+    /**
+     * Returns how often, in milliseconds, the utility log is compacted
+     * into the database file.
+     * 
+     * @return Compact interval in milliseconds. Default is 60000.
+     */
+    public static int getCompactInterval()
+    {
+        return current().compactInterval;
+    }
+    
+    /**
+     * Returns the number of episodes played by the training mode.
+     * 
+     * @return Number of episodes. Default is 1000000.
+     */
+    public static int getEpisodes()
+    {
+        return current().episodes;
+    }
+    
+    /**
+     * Returns the seed of the first map played by the training mode.
+     * Episode i plays the random map with seed Seed + i.
+     * 
+     * @return Seed. Default is 0.
+     */
+    public static int getSeed()
+    {
+        return current().seed;
+    }
+    
+    /**
+     * Returns the size of the random worlds played by the simulator and
+     * the training mode. Worlds of other sizes than 4 get a number of
+     * pits that scales with the size, see MapGenerator.
+     * 
+     * @return Size of the worlds. Default is 4.
+     */
+    public static int getSize()
+    {
+        return current().size;
+    }
+    
+    /**
+     * Returns how often, in milliseconds, the training mode writes the
+     * utility table to the database file.
+     * 
+     * @return Checkpoint interval in milliseconds. Default is 60000.
+     */
+    public static int getCheckpointInterval()
+    {
+        return current().checkpointInterval;
+    }
+    
+    /**
+     * Returns how often, in milliseconds, the training mode prints its
+     * throughput.
+     * 
+     * @return Report interval in milliseconds. Default is 5000.
+     */
+    public static int getReportInterval()
+    {
+        return current().reportInterval;
+    }
+    
+    /**
+     * Checks if the exhaustive evaluation plays only one of every pair of
+     * worlds that are mirror images along the diagonal through the start
+     * square, counting it twice. This halves the work, but the result is
+     * not exact since the agent starts facing right, which is not
+     * symmetric.
+     * 
+     * @return True to collapse mirrored worlds. Default is false.
+     */
+    public static boolean getReflect()
+    {
+        return current().reflect;
+    }
+    
+    /**
+     * Checks if the utility database uses canonical bitmasks, where
+     * rotated and mirrored versions of a situation share one utility
+     * value. A database with legacy bitmasks is migrated when it is
+     * loaded, and a migrated database stays canonical.
+     * 
+     * @return True for canonical bitmasks. Default is false.
+     */
+    public static boolean getCanonical()
+    {
+        return current().canonical;
+    }
+    
+    /**
+     * Checks if hot-path metrics are collected and printed at the end of
+     * a run, see Metrics. Read once, when metrics are first used.
+     * 
+     * @return True to collect metrics. Default is false.
+     */
+    public static boolean getMetrics()
+    {
+        return current().metrics;
+    }
+    
+    /**
+     * Returns how many times per second the GUI shows the world while the
+     * agent plays on its own. Decisions made between two frames are not
+     * shown.
+     * 
+     * @return Frames per second. Default is 30.
+     */
+    public static int getFrameRate()
+    {
+        return current().frameRate;
+    }
+    
+    /**
+     * Returns how long, in milliseconds, the agent waits between decisions
+     * while it plays on its own in the GUI.
+     * 
+     * @return Delay in milliseconds. Default is 0.
+     */
+    public static int getAutoplayDelay()
+    {
+        return current().autoplayDelay;
+    }
+    
+    /**
+     * Parses a 'Name=value' setting into the settings map.
+     * 
+     * @param settings Settings with lower case names
+     * @param line Setting to parse
+     * @return True if the line is a setting
+     */
+    private static boolean parseSetting(Map<String, String> settings, String line)
+    {
+        int split = line.indexOf('=');
+        if (split <= 0)
+            return false;
+        settings.put(line.substring(0, split).trim().toLowerCase(), line.substring(split + 1).trim());
+        return true;
+    }
+    
+    /**
+     * Converts the value of the Option setting to one of the options.
+     * 
+     * @param value Value of the setting
+     * @return Option, 'gui' if the value is unknown
+     */
+    private static String parseOption(String value)
+    {
+        if (value.equalsIgnoreCase("sim") || value.equalsIgnoreCase("simulator")) return "sim";
+        if (value.equalsIgnoreCase("simdb") || value.equalsIgnoreCase("simulatordb")) return "simdb";
+        if (value.equalsIgnoreCase("train")) return "train";
+        if (value.equalsIgnoreCase("exhaustive")) return "exhaustive";
+        if (value.equalsIgnoreCase("evaluate")) return "evaluate";
+        return "gui";
+    }
+    
+    /**
+     * Returns the value of a setting.
+     * 
+     * @param settings Settings with lower case names
+     * @param key Name of the setting, in lower case
+     * @param def Default value
+     * @return The value, or the default value if the setting is missing.
+     */
+    private static String get(Map<String, String> settings, String key, String def)
+    {
+        String value = settings.get(key);
+        return value != null ? value : def;
+    }
+    
+    /**
+     * Returns the value of a boolean setting, 'true', 'yes', 'on' or '1'
+     * for true.
+     * 
+     * @param settings Settings with lower case names
+     * @param key Name of the setting, in lower case
+     * @param def Default value
+     * @return The value, or the default value if the setting is missing.
+     */
+    private static boolean getBoolean(Map<String, String> settings, String key, boolean def)
+    {
+        String value = settings.get(key);
+        if (value == null)
+            return def;
+        return value.equalsIgnoreCase("true") || value.equalsIgnoreCase("yes")
+                || value.equalsIgnoreCase("on") || value.equals("1");
+    }
+    
+    /**
+     * Returns the value of an integer setting. Values that are not numbers
+     * or are below the minimum are reported and replaced by the default.
+     * 
+     * @param settings Settings with lower case names
+     * @param key Name of the setting, in lower case
+     * @param def Default value
+     * @param min Smallest allowed value
+     * @return The value, or the default value if the setting is missing or invalid.
+     */
+    private static int getInt(Map<String, String> settings, String key, int def, int min)
+    {
+        String value = settings.get(key);
+        if (value == null)
+            return def;
         try
         {
-            BufferedReader r = new BufferedReader(new FileReader("config.txt"));
-            String line = r.readLine();
-            while (line != null)
-            {
-                if (line.startsWith("Mapfile="))
-                {
-                    String[] tokens = line.split("=");
-                    mapfile = tokens[1];
-                }
-                line = r.readLine();
-            }
-            r.close();
+            int i = Integer.parseInt(value);
+            if (i >= min)
+                return i;
+            System.err.println("Value " + i + " for " + key + " is below " + min + ", using " + def);
+            return def;
         }
-        catch (Exception ex)
+        catch (NumberFormatException ex)
         {
-            mapfile = "";
+            System.err.println("Invalid value '" + value + "' for " + key + ", using " + def);
+            return def;
         }
-        return mapfile;
     }
 }
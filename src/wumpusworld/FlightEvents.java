@@ -0,0 +1,145 @@
+package wumpusworld;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the agent and the utility database.
+ * Record them with for example
+ * <pre>
+ * java -XX:StartFlightRecording=filename=run.jfr ... wumpusworld.WumpusWorld Option=train
+ * </pre>
+ * and open run.jfr in JDK Mission Control, or print them with
+ * 'jfr print --categories "Wumpus World" run.jfr'.
+ * <p>
+ * Every event is created, begun and, only if shouldCommit() is true,
+ * filled in and committed. Until a recording enables an event its methods
+ * are empty, so the JIT compiler removes the event altogether.
+ */
+public class FlightEvents
+{
+    private FlightEvents()
+    {
+    }
+    
+    /**
+     * One decision of MyAgent, from doAction being called until it returns.
+     */
+    @Name("wumpusworld.Decision")
+    @Label("Agent Decision")
+    @Category("Wumpus World")
+    @StackTrace(false)
+    public static class Decision extends Event
+    {
+        @Label("Player X")
+        public int x;
+        
+        @Label("Player Y")
+        public int y;
+        
+        @Label("Frontier Size")
+        @Description("Unexplored squares the agent can move to, after the decision")
+        public int frontier;
+        
+        @Label("Score")
+        public int score;
+    }
+    
+    /**
+     * One A* search of MyAgent.
+     */
+    @Name("wumpusworld.FindPath")
+    @Label("Find Path")
+    @Category("Wumpus World")
+    @StackTrace(false)
+    public static class FindPath extends Event
+    {
+        @Label("Start X")
+        public int startX;
+        
+        @Label("Start Y")
+        public int startY;
+        
+        @Label("Goal X")
+        public int goalX;
+        
+        @Label("Goal Y")
+        public int goalY;
+        
+        @Label("Path Length")
+        @Description("Number of squares in the path, 0 if there is no path")
+        public int pathLength;
+        
+        @Label("Expansions")
+        @Description("Number of squares taken from the open list")
+        public int expansions;
+    }
+    
+    /**
+     * Loading of a utility table from its database file.
+     */
+    @Name("wumpusworld.DatabaseRead")
+    @Label("Utility Database Read")
+    @Category("Wumpus World")
+    public static class DatabaseRead extends Event
+    {
+        @Label("Path")
+        public String path;
+        
+        @Label("Utility Values")
+        public int values;
+        
+        @Label("Bytes")
+        @DataAmount
+        public long bytes;
+    }
+    
+    /**
+     * Writing of all utility values to a database file.
+     */
+    @Name("wumpusworld.DatabaseWrite")
+    @Label("Utility Database Write")
+    @Category("Wumpus World")
+    public static class DatabaseWrite extends Event
+    {
+        @Label("Path")
+        public String path;
+        
+        @Label("Utility Values")
+        public int values;
+        
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytes;
+    }
+    
+    /**
+     * One episode of the simulator, from the start of the world until the
+     * game is over.
+     */
+    @Name("wumpusworld.Episode")
+    @Label("Episode")
+    @Category("Wumpus World")
+    @StackTrace(false)
+    public static class Episode extends Event
+    {
+        @Label("Map")
+        @Description("Number of the map in the order played")
+        public int map;
+        
+        @Label("World Size")
+        public int size;
+        
+        @Label("Actions")
+        @Description("Number of agent decisions")
+        public int actions;
+        
+        @Label("Score")
+        public int score;
+    }
+}
@@ -1,7 +1,5 @@
 package wumpusworld;
 
-import com.sun.org.apache.xpath.internal.SourceTree;
-
 import javax.swing.*;
 import java.awt.event.*;
 import java.awt.*;
@@ -17,24 +15,19 @@ import java.util.Vector;
 public class GUI implements ActionListener
 {
     private JFrame frame;
-    private JPanel gamepanel;
+    private BoardPanel board;
     private JLabel score;
     private JLabel status;
     private World w;
     private Agent agent;
-    private JPanel[][] blocks;
     private JComboBox mapList;
     private Vector<WorldMap> maps;
     
-    private ImageIcon l_breeze;
-    private ImageIcon l_stench;
-    private ImageIcon l_pit;
-    private ImageIcon l_glitter;
-    private ImageIcon l_wumpus;
-    private ImageIcon l_player_up;
-    private ImageIcon l_player_down;
-    private ImageIcon l_player_left;
-    private ImageIcon l_player_right;
+    //The agent playing on its own, and the copy of the world it shows
+    private Autoplay autoplay;
+    private World view;
+    private Timer frameTimer;
+    private int frames;
     
     /**
      * Creates and start the GUI.
@@ -58,16 +51,6 @@ public class GUI implements ActionListener
             w = MapGenerator.getRandomMap((int)System.currentTimeMillis()).generateWorld();
         }
         
-        l_breeze = new ImageIcon("gfx/B.png");
-        l_stench = new ImageIcon("gfx/S.png");
-        l_pit = new ImageIcon("gfx/P.png");
-        l_glitter = new ImageIcon("gfx/G.png");
-        l_wumpus = new ImageIcon("gfx/W.png");
-        l_player_up = new ImageIcon("gfx/PU.png");
-        l_player_down = new ImageIcon("gfx/PD.png");
-        l_player_left = new ImageIcon("gfx/PL.png");
-        l_player_right = new ImageIcon("gfx/PR.png");
-        
         createWindow();
     }
     
@@ -117,26 +100,8 @@ public class GUI implements ActionListener
         frame.getContentPane().setLayout(new FlowLayout());
         frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         
-        gamepanel = new JPanel();
-        gamepanel.setPreferredSize(new Dimension(600,600));
-        gamepanel.setBackground(Color.GRAY);
-        gamepanel.setLayout(new GridLayout(4,4));
-        
-        //Add blocks
-        blocks = new JPanel[4][4];
-        for (int j = 3; j >= 0; j--)
-        {
-            for (int i = 0; i < 4; i++)
-            {
-                blocks[i][j] = new JPanel();
-                blocks[i][j].setBackground(Color.white);
-                blocks[i][j].setPreferredSize(new Dimension(150,150));
-                blocks[i][j].setBorder(BorderFactory.createLineBorder(Color.black));
-                blocks[i][j].setLayout(new GridLayout(2,2));
-                gamepanel.add(blocks[i][j]);
-            }
-        }
-        frame.getContentPane().add(gamepanel);
+        board = new BoardPanel(600, 600);
+        frame.getContentPane().add(board);
         
         //Add buttons panel
         JPanel buttons = new JPanel();
@@ -182,6 +147,18 @@ public class GUI implements ActionListener
         ba.setActionCommand("AGENT");
         ba.addActionListener(this);
         buttons.add(ba);
+        JButton bp = new JButton("Play");
+        bp.setActionCommand("PLAY");
+        bp.addActionListener(this);
+        buttons.add(bp);
+        JButton bpa = new JButton("Pause");
+        bpa.setActionCommand("PAUSE");
+        bpa.addActionListener(this);
+        buttons.add(bpa);
+        JButton bst = new JButton("Stop");
+        bst.setActionCommand("STOP");
+        bst.addActionListener(this);
+        buttons.add(bst);
         //Add a delimiter
         JLabel l = new JLabel("");
         l.setPreferredSize(new Dimension(200,25));
@@ -203,6 +180,10 @@ public class GUI implements ActionListener
         
         frame.getContentPane().add(buttons);
         
+        //Shows the latest state of the world while the agent plays on its own
+        frameTimer = new Timer(1000 / Config.getFrameRate(), this);
+        frameTimer.setActionCommand("FRAME");
+        
         updateGame();
         
         //Show window
@@ -218,36 +199,43 @@ public class GUI implements ActionListener
     {
         if (e.getActionCommand().equals("TL"))
         {
+            stopAutoplay();
             w.doAction(World.A_TURN_LEFT);
             updateGame();
         }
         if (e.getActionCommand().equals("TR"))
         {
+            stopAutoplay();
             w.doAction(World.A_TURN_RIGHT);
             updateGame();
         }
         if (e.getActionCommand().equals("MF"))
         {
+            stopAutoplay();
             w.doAction(World.A_MOVE);
             updateGame();
         }
         if (e.getActionCommand().equals("GRAB"))
         {
+            stopAutoplay();
             w.doAction(World.A_GRAB);
             updateGame();
         }
         if (e.getActionCommand().equals("CLIMB"))
         {
+            stopAutoplay();
             w.doAction(World.A_CLIMB);
             updateGame();
         }
         if (e.getActionCommand().equals("SHOOT"))
         {
+            stopAutoplay();
             w.doAction(World.A_SHOOT);
             updateGame();
         }
         if (e.getActionCommand().equals("NEW"))
         {
+            stopAutoplay();
             String s = (String)mapList.getSelectedItem();
             if (s.equalsIgnoreCase("Random"))
             {
@@ -264,76 +252,131 @@ public class GUI implements ActionListener
         }
         if (e.getActionCommand().equals("AGENT"))
         {
-            if (agent == null)
+            //The agent makes one decision on the autoplay thread
+            startAutoplay(true);
+            autoplay.step();
+        }
+        if (e.getActionCommand().equals("PLAY"))
+        {
+            startAutoplay(false);
+            autoplay.resume();
+            showWorld(view);
+        }
+        if (e.getActionCommand().equals("PAUSE"))
+        {
+            if (autoplay != null)
             {
-                agent = new MyAgent(w);
+                autoplay.pause();
+                showWorld(view);
             }
-
-            agent.doAction();
-            updateGame();
+        }
+        if (e.getActionCommand().equals("STOP"))
+        {
+            stopAutoplay();
+        }
+        if (e.getActionCommand().equals("FRAME"))
+        {
+            showFrame();
         }
     }
     
     /**
-     * Updates the game GUI to a new world state.
+     * Lets the agent play the world on its own thread, if it is not
+     * already doing so.
+     * 
+     * @param paused True to start paused
      */
-    private void updateGame()
+    private void startAutoplay(boolean paused)
     {
-        for (int i = 0; i < 4; i++)
+        if (autoplay != null)
+            return;
+        if (agent == null)
         {
-            for (int j = 0; j < 4; j++)
-            {
-                blocks[i][j].removeAll();
-                blocks[i][j].setBackground(Color.WHITE);
-                if (w.hasPit(i+1, j+1))
-                {
-                    blocks[i][j].add(new JLabel(l_pit));
-                }
-                if (w.hasBreeze(i+1, j+1))
-                {
-                    blocks[i][j].add(new JLabel(l_breeze));
-                }
-                if (w.hasStench(i+1, j+1))
-                {
-                    blocks[i][j].add(new JLabel(l_stench));
-                }
-                if (w.hasWumpus(i+1, j+1))
-                {
-                    blocks[i][j].add(new JLabel(l_wumpus));
-                }
-                if (w.hasGlitter(i+1, j+1))
-                {
-                    blocks[i][j].add(new JLabel(l_glitter));
-                }
-                if (w.hasPlayer(i+1, j+1))
-                {
-                    if (w.getDirection() == World.DIR_DOWN) blocks[i][j].add(new JLabel(l_player_down));
-                    if (w.getDirection() == World.DIR_UP) blocks[i][j].add(new JLabel(l_player_up));
-                    if (w.getDirection() == World.DIR_LEFT) blocks[i][j].add(new JLabel(l_player_left));
-                    if (w.getDirection() == World.DIR_RIGHT) blocks[i][j].add(new JLabel(l_player_right));
-                }
-                if (w.isUnknown(i+1, j+1))
-                {
-                    blocks[i][j].setBackground(Color.GRAY);
-                }
-                
-                blocks[i][j].updateUI();
-                blocks[i][j].repaint();
-            }
+            agent = new MyAgent(w);
+        }
+        view = w.cloneWorld();
+        frames = 0;
+        autoplay = new Autoplay(w, agent, Config.getAutoplayDelay(), paused);
+        frameTimer.start();
+    }
+    
+    /**
+     * Stops the agent's thread, if it is running, and shows the world.
+     */
+    private void stopAutoplay()
+    {
+        if (autoplay == null)
+            return;
+        autoplay.stop();
+        autoplay = null;
+        frameTimer.stop();
+        updateGame();
+    }
+    
+    /**
+     * Shows the latest state published by the agent's thread. States
+     * published since the last frame are skipped.
+     */
+    private void showFrame()
+    {
+        if (autoplay == null)
+            return;
+        boolean finished = autoplay.isFinished();
+        World.Snapshot snapshot = autoplay.takeSnapshot();
+        if (snapshot != null)
+        {
+            view.restore(snapshot);
+            frames++;
+            showWorld(view);
         }
+        if (finished)
+        {
+            stopAutoplay();
+        }
+    }
+    
+    /**
+     * Updates the game GUI to a new world state.
+     */
+    private void updateGame()
+    {
+        showWorld(w);
+    }
+    
+    /**
+     * Updates the game GUI to show a world.
+     * 
+     * @param world The world to show
+     */
+    private void showWorld(World world)
+    {
+        board.update(world);
         
-        score.setText("Score: " + w.getScore());
+        score.setText("Score: " + world.getScore());
         status.setText("");
-        if (w.isInPit())
+        if (world.isInPit())
         {
             status.setText("Player must climb up!");
         }
-        if (w.gameOver())
+        if (world.gameOver())
         {
             status.setText("GAME OVER");
         }
-        
-        gamepanel.updateUI();
-        gamepanel.repaint();
+        else if (!world.isInPit())
+        {
+            showAutoplayStatus();
+        }
+    }
+    
+    /**
+     * Shows if the agent is playing or paused, and how many of its
+     * decisions were not shown.
+     */
+    private void showAutoplayStatus()
+    {
+        if (autoplay == null)
+            return;
+        String state = autoplay.isPaused() ? "Paused" : "Playing";
+        status.setText(state + ", " + (autoplay.getPublished() - frames) + " skipped");
     }  
 }
@@ -0,0 +1,247 @@
+package wumpusworld;
+
+/**
+ * Hash map from int keys to int values, without boxing. Keys and values are
+ * kept in two flat arrays using open addressing with linear probing, so an
+ * entry costs about 8 bytes divided by the load factor.
+ * <p>
+ * Entries cannot be removed, as the utility table never forgets a bitmask.
+ * The map is not thread safe.
+ */
+public class IntIntMap
+{
+    //Marks an empty slot. The key 0 itself is stored outside the arrays.
+    private static final int FREE = 0;
+    private static final float LOAD_FACTOR = 0.5f;
+    
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasFreeKey;
+    private int freeValue;
+    
+    /**
+     * Creates an empty map.
+     */
+    public IntIntMap()
+    {
+        this(16);
+    }
+    
+    /**
+     * Creates an empty map with room for the given number of entries.
+     * 
+     * @param expected Expected number of entries
+     */
+    public IntIntMap(int expected)
+    {
+        int capacity = 2;
+        while (capacity * LOAD_FACTOR < expected)
+        {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+    
+    /**
+     * Creates a copy of another map.
+     * 
+     * @param other Map to copy
+     */
+    public IntIntMap(IntIntMap other)
+    {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        mask = other.mask;
+        size = other.size;
+        threshold = other.threshold;
+        hasFreeKey = other.hasFreeKey;
+        freeValue = other.freeValue;
+    }
+    
+    /**
+     * Returns the number of entries.
+     * 
+     * @return Number of entries
+     */
+    public int size()
+    {
+        return size;
+    }
+    
+    /**
+     * Checks if the map contains a key.
+     * 
+     * @param key Key
+     * @return True if the key is in the map
+     */
+    public boolean containsKey(int key)
+    {
+        if (key == FREE) return hasFreeKey;
+        
+        return keys[slot(key)] != FREE;
+    }
+    
+    /**
+     * Returns the value for a key.
+     * 
+     * @param key Key
+     * @param missing Value to return if the key is not in the map
+     * @return The value, or missing if the key is not in the map
+     */
+    public int get(int key, int missing)
+    {
+        if (key == FREE) return hasFreeKey ? freeValue : missing;
+        
+        int i = slot(key);
+        return keys[i] != FREE ? values[i] : missing;
+    }
+    
+    /**
+     * Sets the value for a key.
+     * 
+     * @param key Key
+     * @param value Value
+     */
+    public void put(int key, int value)
+    {
+        if (key == FREE)
+        {
+            if (!hasFreeKey) size++;
+            hasFreeKey = true;
+            freeValue = value;
+            return;
+        }
+        
+        int i = slot(key);
+        if (keys[i] == FREE)
+        {
+            keys[i] = key;
+            values[i] = value;
+            if (++size > threshold) grow();
+        }
+        else
+        {
+            values[i] = value;
+        }
+    }
+    
+    /**
+     * Returns a cursor over all entries. The map must not be changed
+     * while the cursor is used.
+     * 
+     * @return A cursor placed before the first entry
+     */
+    public Cursor cursor()
+    {
+        return new Cursor();
+    }
+    
+    /**
+     * Iterates over the entries of the map, in no particular order.
+     */
+    public class Cursor
+    {
+        //Slot of the current entry, or keys.length for the free key
+        private int pos = -1;
+        
+        /**
+         * Moves to the next entry.
+         * 
+         * @return True if there is an entry, false when all entries are visited
+         */
+        public boolean next()
+        {
+            while (++pos < keys.length)
+            {
+                if (keys[pos] != FREE) return true;
+            }
+            if (pos == keys.length && hasFreeKey) return true;
+            pos = keys.length + 1;
+            return false;
+        }
+        
+        /**
+         * Returns the key of the current entry.
+         * 
+         * @return Key
+         */
+        public int key()
+        {
+            return pos == keys.length ? FREE : keys[pos];
+        }
+        
+        /**
+         * Returns the value of the current entry.
+         * 
+         * @return Value
+         */
+        public int value()
+        {
+            return pos == keys.length ? freeValue : values[pos];
+        }
+    }
+    
+    /**
+     * Finds the slot of a key, or the free slot where it would be added.
+     * 
+     * @param key Key, not FREE
+     * @return Slot index
+     */
+    private int slot(int key)
+    {
+        int i = hash(key) & mask;
+        while (keys[i] != FREE && keys[i] != key)
+        {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+    
+    /**
+     * Spreads the bits of a key, since bitmasks differ mostly in
+     * their high bits.
+     * 
+     * @param key Key
+     * @return Hash code
+     */
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    /**
+     * Allocates empty arrays.
+     * 
+     * @param capacity Number of slots, a power of two
+     */
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        threshold = (int)(capacity * LOAD_FACTOR);
+    }
+    
+    /**
+     * Doubles the number of slots and adds all entries again.
+     */
+    private void grow()
+    {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != FREE)
+            {
+                int j = slot(oldKeys[i]);
+                keys[j] = oldKeys[i];
+                values[j] = oldValues[i];
+            }
+        }
+    }
+}
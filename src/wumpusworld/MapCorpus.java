@@ -0,0 +1,400 @@
+package wumpusworld;
+
+import java.awt.Point;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read-only, memory-mapped corpus of Wumpus World maps in a compact binary
+ * format. Every map is a fixed-width record, so any map can be read
+ * directly by its number, and the corpus can be split into ranges for
+ * parallel consumption.
+ * <p>
+ * File format, all ints big endian:
+ * <pre>
+ * int    magic    0x57574D43 ("WWMC")
+ * int    version  1
+ * int    size     size of all maps in the corpus
+ * int    count
+ * byte[] records  count records of recordSize(size) bytes
+ * </pre>
+ * A square (x,y) is numbered (x-1)*size + (y-1). A 4x4 map is three bytes:
+ * the Wumpus square in the high nibble and the gold square in the low
+ * nibble of the first byte, followed by a 16 bit pit mask. Other maps are
+ * the Wumpus square, the gold square and a pit bitmask of (size*size+7)/8
+ * bytes, where square i is bit i%8 of byte i/8. The squares are 16 bit
+ * for maps up to 255x255 and 32 bit for larger maps, see squareBytes().
+ */
+public class MapCorpus
+{
+    public static final int MAGIC = 0x57574D43;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    // Largest size where square numbers fit an int and a record fits a chunk
+    public static final int MAX_SIZE = 46340;
+    // Largest size with 16 bit squares
+    private static final int SHORT_SQUARE_SIZE = 255;
+    
+    // Largest mapping of the file, in bytes
+    private static final int CHUNK_SIZE = 1 << 30;
+    
+    private final int size;
+    private final int count;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private final ByteBuffer[] chunks;
+    
+    private MapCorpus(int size, int count, ByteBuffer[] chunks)
+    {
+        this.size = size;
+        this.count = count;
+        this.recordSize = recordSize(size);
+        this.recordsPerChunk = CHUNK_SIZE / recordSize;
+        this.chunks = chunks;
+    }
+    
+    /**
+     * Returns the number of bytes used for a map.
+     * 
+     * @param size Size of the map
+     * @return Record size in bytes
+     */
+    public static int recordSize(int size)
+    {
+        if (size == 4)
+            return 3;
+        return 2 * squareBytes(size) + (int)(((long)size * size + 7) / 8);
+    }
+    
+    /**
+     * Returns the number of bytes used for the Wumpus and the gold square
+     * of a map that is not 4x4.
+     * 
+     * @param size Size of the map
+     * @return 2 for maps up to 255x255, otherwise 4
+     */
+    public static int squareBytes(int size)
+    {
+        return size <= SHORT_SQUARE_SIZE ? 2 : 4;
+    }
+    
+    /**
+     * Checks if a file is a map corpus.
+     * 
+     * @param path Map file
+     * @return True if the file starts with the magic number
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isCorpus(Path path) throws IOException
+    {
+        if (Files.size(path) < 4)
+            return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path.toFile())))
+        {
+            return in.readInt() == MAGIC;
+        }
+    }
+    
+    /**
+     * Maps a map corpus file.
+     * 
+     * @param path Corpus file
+     * @return The corpus
+     * @throws IOException If the file cannot be read or is not a map corpus
+     */
+    public static MapCorpus open(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0)
+            {
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC)
+                throw new IOException(path + " is not a map corpus");
+            if (header.getInt(4) != VERSION)
+                throw new IOException(path + " has unsupported version " + header.getInt(4));
+            int size = header.getInt(8);
+            int count = header.getInt(12);
+            if (size < 1 || size > MAX_SIZE || count < 0)
+                throw new IOException(path + " has an invalid header");
+            long recordSize = recordSize(size);
+            if (channel.size() < HEADER_SIZE + recordSize * count)
+                throw new IOException(path + " is truncated");
+            
+            // Map in chunks of whole records, since a mapping is limited to 2 GB
+            long recordsPerChunk = CHUNK_SIZE / recordSize;
+            ByteBuffer[] chunks = new ByteBuffer[(int)((count + recordsPerChunk - 1) / recordsPerChunk)];
+            for (int i = 0; i < chunks.length; i++)
+            {
+                long first = i * recordsPerChunk;
+                long records = Math.min(recordsPerChunk, count - first);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + first * recordSize, records * recordSize);
+            }
+            return new MapCorpus(size, count, chunks);
+        }
+    }
+    
+    /**
+     * Returns the size of the maps.
+     * 
+     * @return The size
+     */
+    public int getSize()
+    {
+        return size;
+    }
+    
+    /**
+     * Returns the number of maps.
+     * 
+     * @return Number of maps
+     */
+    public int count()
+    {
+        return count;
+    }
+    
+    /**
+     * Reads a map.
+     * 
+     * @param i Number of the map, from 0 to count()-1
+     * @return The map
+     */
+    public WorldMap get(int i)
+    {
+        ByteBuffer chunk = chunks[i / recordsPerChunk];
+        int pos = (i % recordsPerChunk) * recordSize;
+        WorldMap map = new WorldMap(size);
+        int pits = size * size;
+        if (size == 4)
+        {
+            int squares = chunk.get(pos) & 0xFF;
+            addWumpus(map, squares >>> 4);
+            addGold(map, squares & 15);
+            int mask = chunk.getShort(pos + 1) & 0xFFFF;
+            for (int s = 0; s < pits; s++)
+            {
+                if ((mask & (1 << s)) != 0)
+                    addPit(map, s);
+            }
+        }
+        else
+        {
+            int maskPos = pos + 2 * squareBytes(size);
+            if (squareBytes(size) == 2)
+            {
+                addWumpus(map, chunk.getShort(pos) & 0xFFFF);
+                addGold(map, chunk.getShort(pos + 2) & 0xFFFF);
+            }
+            else
+            {
+                addWumpus(map, chunk.getInt(pos));
+                addGold(map, chunk.getInt(pos + 4));
+            }
+            for (int s = 0; s < pits; s++)
+            {
+                if ((chunk.get(maskPos + (s >>> 3)) & (1 << (s & 7))) != 0)
+                    addPit(map, s);
+            }
+        }
+        return map;
+    }
+    
+    /**
+     * Returns all maps as a stream. Maps are decoded while the stream is
+     * consumed, and the stream splits into ranges of maps for parallel
+     * consumption.
+     * 
+     * @return Stream of the maps
+     */
+    public Stream<WorldMap> stream()
+    {
+        return IntStream.range(0, count).mapToObj(this::get);
+    }
+    
+    private void addWumpus(WorldMap map, int square)
+    {
+        map.addWumpus(square / size + 1, square % size + 1);
+    }
+    
+    private void addGold(WorldMap map, int square)
+    {
+        map.addGold(square / size + 1, square % size + 1);
+    }
+    
+    private void addPit(WorldMap map, int square)
+    {
+        map.addPit(square / size + 1, square % size + 1);
+    }
+    
+    /**
+     * Writes maps of one size to a corpus file.
+     */
+    public static class Writer implements Closeable
+    {
+        private final Path path;
+        private final int size;
+        private final DataOutputStream out;
+        private final byte[] record;
+        private int count = 0;
+        
+        /**
+         * Creates a corpus file, replacing an existing file.
+         * 
+         * @param path Corpus file
+         * @param size Size of the maps
+         * @throws IOException If the file cannot be created
+         */
+        public Writer(Path path, int size) throws IOException
+        {
+            if (size < 1 || size > MAX_SIZE)
+                throw new IllegalArgumentException("Map size must be 1 to " + MAX_SIZE);
+            this.path = path;
+            this.size = size;
+            record = new byte[recordSize(size)];
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path.toFile()), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(0);
+        }
+        
+        /**
+         * Appends a map.
+         * 
+         * @param map The map, with the same size as the corpus and a Wumpus and gold
+         * @throws IOException If writing fails
+         */
+        public void write(WorldMap map) throws IOException
+        {
+            if (map.getSize() != size)
+                throw new IllegalArgumentException("Map size " + map.getSize() + " in a corpus of size " + size);
+            if (map.getWumpus() == null || map.getGold() == null)
+                throw new IllegalArgumentException("Map has no Wumpus or gold");
+            if (count == Integer.MAX_VALUE)
+                throw new IllegalStateException("Corpus is full");
+            
+            int wumpus = square(map.getWumpus());
+            int gold = square(map.getGold());
+            if (size == 4)
+            {
+                int mask = 0;
+                for (Point p : map.getPits())
+                {
+                    mask |= 1 << square(p);
+                }
+                record[0] = (byte)(wumpus << 4 | gold);
+                record[1] = (byte)(mask >>> 8);
+                record[2] = (byte)mask;
+            }
+            else
+            {
+                java.util.Arrays.fill(record, (byte)0);
+                ByteBuffer squares = ByteBuffer.wrap(record);
+                if (squareBytes(size) == 2)
+                    squares.putShort((short)wumpus).putShort((short)gold);
+                else
+                    squares.putInt(wumpus).putInt(gold);
+                int maskPos = squares.position();
+                for (Point p : map.getPits())
+                {
+                    int s = square(p);
+                    record[maskPos + (s >>> 3)] |= 1 << (s & 7);
+                }
+            }
+            out.write(record);
+            count++;
+        }
+        
+        /**
+         * Returns the number of maps written.
+         * 
+         * @return Number of maps
+         */
+        public int count()
+        {
+            return count;
+        }
+        
+        /**
+         * Writes the map count to the header and closes the file.
+         * 
+         * @throws IOException If writing fails
+         */
+        @Override
+        public void close() throws IOException
+        {
+            out.close();
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+            {
+                ByteBuffer header = ByteBuffer.allocate(4).putInt(0, count);
+                channel.write(header, 12);
+            }
+        }
+        
+        private int square(Point p)
+        {
+            if (p.x < 1 || p.y < 1 || p.x > size || p.y > size)
+                throw new IllegalArgumentException("Square " + p.x + "," + p.y + " outside the map");
+            return (p.x - 1) * size + (p.y - 1);
+        }
+    }
+    
+    /**
+     * Converts a text map file to a corpus, or generates a corpus of
+     * random maps.
+     * 
+     * @param args 'convert' with a text map file and output file, or
+     * 'generate' with an output file, a number of maps, a seed and a
+     * number of threads
+     * @throws IOException If reading or writing fails
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length >= 3 && args[0].equalsIgnoreCase("convert"))
+        {
+            Writer writer = null;
+            try (Stream<WorldMap> maps = new MapReader(args[1]).stream())
+            {
+                Iterator<WorldMap> it = maps.iterator();
+                while (it.hasNext())
+                {
+                    WorldMap map = it.next();
+                    if (writer == null)
+                        writer = new Writer(Paths.get(args[2]), map.getSize());
+                    writer.write(map);
+                }
+            }
+            finally
+            {
+                if (writer != null)
+                    writer.close();
+            }
+            System.out.println("Converted " + (writer != null ? writer.count() : 0) + " maps to " + args[2]);
+        }
+        else if (args.length >= 3 && args[0].equalsIgnoreCase("generate"))
+        {
+            int count = Integer.parseInt(args[2]);
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+            int threads = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+            long start = System.nanoTime();
+            MapGenerator.generateCorpus(Paths.get(args[1]), seed, count, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.println(String.format("Generated %d maps to %s in %.2f s (%.0f maps/s)", count, args[1], seconds, count / seconds));
+        }
+        else
+        {
+            System.out.println("Usage: MapCorpus convert <map file> <corpus file>");
+            System.out.println("       MapCorpus generate <corpus file> <count> [<seed>] [<threads>]");
+        }
+    }
+}
@@ -1,14 +1,30 @@
 package wumpusworld;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class generates random Wumpus World maps.
- *
+ * 
  * @author Johan Hagelbäck
  */
 public class MapGenerator 
 {
+    // Number of maps the bulk generator draws from one random stream
+    public static final int BLOCK_SIZE = 1 << 16;
+    
     /**
      * Generates a random Wumpus World map.
      * 
@@ -16,19 +32,46 @@ public class MapGenerator
      * @return Generated Wumpus World
      */
     public static WorldMap getRandomMap(int seed)
+    {
+        return getRandomMap(seed, 4);
+    }
+    
+    /**
+     * Generates a random Wumpus World map of any size. The number of
+     * pits scales with the size, so that pits cover the same share of
+     * the squares as the three pits of a 4x4 map: one in five of the
+     * squares other than the start square.
+     * 
+     * @param seed Seed for the randomizer. Same seed always results in the same random map.
+     * @param size Size of the world
+     * @return Generated Wumpus World. For size 4 it is the same as getRandomMap(seed).
+     */
+    public static WorldMap getRandomMap(int seed, int size)
     {
         Random rnd = new Random(seed);
-        WorldMap w = new WorldMap(4);
+        WorldMap w = new WorldMap(size);
         
         addRandomWumpus(w,rnd);
         addRandomGold(w,rnd);
-        addRandomPit(w,rnd);
-        addRandomPit(w,rnd);
-        addRandomPit(w,rnd);
+        for (int i = pitCount(size); i > 0; i--)
+        {
+            addRandomPit(w,rnd);
+        }
         
         return w;
     }
     
+    /**
+     * Returns the number of pits in a random map.
+     * 
+     * @param size Size of the world
+     * @return Number of pits, 3 for a 4x4 world
+     */
+    public static int pitCount(int size)
+    {
+        return (int)(((long)size * size - 1) / 5);
+    }
+    
     /**
      * Adds a pit to a random square.
      * 
@@ -40,8 +83,8 @@ public class MapGenerator
         boolean valid = false;
         while (!valid)
         {
-            int x = rnd(r);
-            int y = rnd(r);
+            int x = rnd(r, w.getSize());
+            int y = rnd(r, w.getSize());
             if (!(x == 1 && y == 1) && !w.hasPit(x, y))
             {
                 valid = true;
@@ -61,8 +104,8 @@ public class MapGenerator
         boolean valid = false;
         while (!valid)
         {
-            int x = rnd(r);
-            int y = rnd(r);
+            int x = rnd(r, w.getSize());
+            int y = rnd(r, w.getSize());
             if (!(x == 1 && y == 1))
             {
                 valid = true;
@@ -82,8 +125,8 @@ public class MapGenerator
         boolean valid = false;
         while (!valid)
         {
-            int x = rnd(r);
-            int y = rnd(r);
+            int x = rnd(r, w.getSize());
+            int y = rnd(r, w.getSize());
             if (!(x == 1 && y == 1))
             {
                 valid = true;
@@ -93,13 +136,132 @@ public class MapGenerator
     }
     
     /**
+     * Returns a random coordinate.
      * 
+     * @param rnd Randomizer
+     * @param size Size of the world
+     * @return Coordinate from 1 to size
+     */
+    private static int rnd(Random rnd, int size)
+    {
+        return rnd.nextInt(size) + 1;
+    }
+    
+    /**
+     * Generates a corpus file of random 4x4 maps, with the same
+     * distribution as getRandomMap(). The maps are encoded directly into
+     * the corpus records. Every block of BLOCK_SIZE maps is drawn from its
+     * own random stream, seeded from the seed and the block number, and
+     * the blocks are generated on a pool of threads. The file only
+     * depends on the seed and the number of maps, not on the number of
+     * threads.
      * 
-     * @param rnd
-     * @return 
+     * @param path Corpus file to create
+     * @param seed Seed for the randomizer
+     * @param count Number of maps
+     * @param threads Number of worker threads
+     * @throws IOException If the file cannot be written
      */
-    private static int rnd(Random rnd)
+    public static void generateCorpus(Path path, final long seed, final int count, int threads) throws IOException
     {
-        return rnd.nextInt(4) + 1;
+        final int recordSize = MapCorpus.recordSize(4);
+        final int blocks = (int)((count + (long)BLOCK_SIZE - 1) / BLOCK_SIZE);
+        final AtomicInteger next = new AtomicInteger();
+        
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            ByteBuffer header = ByteBuffer.allocate(MapCorpus.HEADER_SIZE);
+            header.putInt(MapCorpus.MAGIC).putInt(MapCorpus.VERSION).putInt(4).putInt(count).flip();
+            write(channel, header, 0);
+            
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                workers.add(pool.submit(() ->
+                {
+                    byte[] records = new byte[BLOCK_SIZE * recordSize];
+                    for (int b = next.getAndIncrement(); b < blocks; b = next.getAndIncrement())
+                    {
+                        int maps = (int)Math.min(BLOCK_SIZE, count - (long)b * BLOCK_SIZE);
+                        generateBlock(seed, b, records, maps);
+                        write(channel, ByteBuffer.wrap(records, 0, maps * recordSize),
+                                MapCorpus.HEADER_SIZE + (long)b * BLOCK_SIZE * recordSize);
+                    }
+                    return null;
+                }));
+            }
+            try
+            {
+                for (Future<?> f : workers)
+                {
+                    f.get();
+                }
+            }
+            catch (InterruptedException | ExecutionException ex)
+            {
+                throw new IOException("Map generation failed", ex);
+            }
+            finally
+            {
+                pool.shutdown();
+            }
+        }
+    }
+    
+    /**
+     * Generates a block of random 4x4 maps as corpus records. Squares
+     * are numbered as in MapCorpus, square 0 is the start square.
+     * 
+     * @param seed Seed for the randomizer
+     * @param block Block number, selecting the random stream
+     * @param records Array to write the records to
+     * @param count Number of maps
+     */
+    public static void generateBlock(long seed, long block, byte[] records, int count)
+    {
+        SplittableRandom rnd = new SplittableRandom(mix(seed * 0x9E3779B97F4A7C15L + block));
+        for (int i = 0, pos = 0; i < count; i++, pos += 3)
+        {
+            int wumpus = 1 + rnd.nextInt(15);
+            int gold = 1 + rnd.nextInt(15);
+            int pits = 0;
+            for (int p = 0; p < 3; p++)
+            {
+                int pit;
+                do
+                {
+                    pit = 1 << (1 + rnd.nextInt(15));
+                }
+                while ((pits & pit) != 0);
+                pits |= pit;
+            }
+            records[pos] = (byte)(wumpus << 4 | gold);
+            records[pos + 1] = (byte)(pits >>> 8);
+            records[pos + 2] = (byte)pits;
+        }
+    }
+    
+    /**
+     * Scrambles the bits of a seed, so that neighbouring block numbers get
+     * unrelated random streams.
+     * 
+     * @param z Value to scramble
+     * @return Scrambled value
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return z ^ (z >>> 33);
+    }
+    
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            position += channel.write(buffer, position);
+        }
     }
 }
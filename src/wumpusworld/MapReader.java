@@ -1,7 +1,16 @@
 package wumpusworld;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.Vector;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 /**
  * This class read maps from a file.
  * 
@@ -17,96 +26,212 @@ public class MapReader
      */
     public MapReader()
     {
-        mapFilename = Config.getMapfile();
+        this(Config.getMapfile());
+    }
+    
+    /**
+     * Creates a new instance of the class reading the given map file.
+     * 
+     * @param mapFilename Path to the map file
+     */
+    public MapReader(String mapFilename)
+    {
+        this.mapFilename = mapFilename;
         maps = new Vector<WorldMap>();
     }
     
     /**
      * Read the maps from the map file and returns a Vector
-     * with the maps. The program exits if an error is
-     * encountered.
+     * with the maps, followed by three random maps. If an error
+     * is encountered, the maps read so far are returned.
      * 
-     * @return A list of map objects, or empty list if none was found. 
+     * @return A list of map objects, or empty list if none was found.
      */
     public Vector<WorldMap> readMaps()
     {
-        try
+        try (Stream<WorldMap> s = stream())
         {
-            BufferedReader reader = new BufferedReader(new FileReader(mapFilename));
-            
-            WorldMap wm = null;
-            String line = reader.readLine();
-            while (line != null)
-            {
-                line = line.toUpperCase();
-                
-                //New map
-                if (line.startsWith("NEW"))
-                {
-                    String[] t = split(line);
-                    int size = Integer.parseInt(t[1]);
-                    wm = new WorldMap(size);
-                }
-                
-                //Pit
-                if (line.startsWith("P"))
-                {
-                    String[] t = split(line);
-                    int x = Integer.parseInt(t[1]);
-                    int y = Integer.parseInt(t[2]);
-                    wm.addPit(x,y);
-                }
-                
-                //Wumpus
-                if (line.startsWith("W"))
-                {
-                    String[] t = split(line);
-                    int x = Integer.parseInt(t[1]);
-                    int y = Integer.parseInt(t[2]);
-                    wm.addWumpus(x,y);
-                }
-                
-                //Gold
-                if (line.startsWith("G"))
-                {
-                    String[] t = split(line);
-                    int x = Integer.parseInt(t[1]);
-                    int y = Integer.parseInt(t[2]);
-                    wm.addGold(x,y);
-                }
-                
-                //End of map
-                if (line.startsWith("END"))
-                {
-                    maps.add(wm);
-                }
-                
-                line = reader.readLine();
-            }
-            
-            reader.close();
+            s.forEach(maps::add);
         }
-        catch (Exception ex)
+        catch (UncheckedIOException | IllegalArgumentException ex)
         {
-            
+            System.err.println("Could not read all maps: " + ex.getMessage());
         }
         
         //Add some random maps
-        maps.add(MapGenerator.getRandomMap(42));
-        maps.add(MapGenerator.getRandomMap(1977));
-        maps.add(MapGenerator.getRandomMap(1990));
+        randomMaps().forEach(maps::add);
         
         return maps;
     }
     
     /**
-     * Splits a string with whitespace as delimiter.
+     * Returns the maps in the map file as a stream. The map file is
+     * either a text file or a binary map corpus. Maps are parsed
+     * lazily while the stream is consumed, and the stream can be split
+     * for parallel consumption. Close the stream to close the file.
      * 
-     * @param line The string to split
-     * @return Tokens
+     * @return Stream of the maps in the file
+     * @throws UncheckedIOException If the file cannot be opened or read
+     * @throws IllegalArgumentException If the file contains an invalid line,
+     * thrown when the stream reaches it
      */
-    private String[] split(String line)
+    public Stream<WorldMap> stream()
     {
-        return line.split(" ");
+        Path path = Paths.get(mapFilename);
+        BufferedReader reader;
+        try
+        {
+            // A binary map corpus is read from the mapped file instead
+            if (MapCorpus.isCorpus(path))
+                return MapCorpus.open(path).stream();
+            reader = Files.newBufferedReader(path, StandardCharsets.ISO_8859_1);
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+        return StreamSupport.stream(new MapSpliterator(reader), false).onClose(() ->
+        {
+            try
+            {
+                reader.close();
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+        });
+    }
+    
+    /**
+     * Returns the random maps that are played after the maps in the file.
+     * 
+     * @return Stream of the random maps
+     */
+    public static Stream<WorldMap> randomMaps()
+    {
+        return Stream.of(42, 1977, 1990).map(MapGenerator::getRandomMap);
+    }
+    
+    /**
+     * Parses maps one at a time from a reader. Splitting hands out batches
+     * of parsed maps, so several threads can consume the file.
+     */
+    private static class MapSpliterator extends Spliterators.AbstractSpliterator<WorldMap>
+    {
+        private final BufferedReader reader;
+        private int lineNumber = 0;
+        
+        MapSpliterator(BufferedReader reader)
+        {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.reader = reader;
+        }
+        
+        @Override
+        public boolean tryAdvance(Consumer<? super WorldMap> action)
+        {
+            WorldMap wm = null;
+            try
+            {
+                String line = reader.readLine();
+                while (line != null)
+                {
+                    lineNumber++;
+                    int pos = skipSpaces(line, 0);
+                    char c = pos < line.length() ? Character.toUpperCase(line.charAt(pos)) : ' ';
+                    int args = skipWord(line, pos);
+                    
+                    //New map
+                    if (c == 'N' && line.regionMatches(true, pos, "NEW", 0, 3))
+                    {
+                        wm = new WorldMap(parseInt(line, args));
+                    }
+                    
+                    //Pit, Wumpus or Gold
+                    if (c == 'P' || c == 'W' || c == 'G')
+                    {
+                        if (wm == null)
+                            throw error(line, "no NEW before this line");
+                        int x = parseInt(line, args);
+                        int y = parseInt(line, skipWord(line, skipSpaces(line, args)));
+                        if (x < 1 || y < 1 || x > wm.getSize() || y > wm.getSize())
+                            throw error(line, "square outside the map");
+                        if (c == 'P') wm.addPit(x, y);
+                        if (c == 'W') wm.addWumpus(x, y);
+                        if (c == 'G') wm.addGold(x, y);
+                    }
+                    
+                    //End of map
+                    if (c == 'E' && line.regionMatches(true, pos, "END", 0, 3))
+                    {
+                        if (wm == null)
+                            throw error(line, "no NEW before this line");
+                        action.accept(wm);
+                        return true;
+                    }
+                    
+                    line = reader.readLine();
+                }
+            }
+            catch (IOException ex)
+            {
+                throw new UncheckedIOException(ex);
+            }
+            return false;
+        }
+        
+        /**
+         * Parses the next number on a line.
+         * 
+         * @param line The line
+         * @param pos Position to start looking from
+         * @return The number
+         */
+        private int parseInt(String line, int pos)
+        {
+            pos = skipSpaces(line, pos);
+            int end = skipDigits(line, pos);
+            if (end == pos || end - pos > 9)
+                throw error(line, "expected a number");
+            int value = 0;
+            for (int i = pos; i < end; i++)
+            {
+                value = value * 10 + (line.charAt(i) - '0');
+            }
+            return value;
+        }
+        
+        private IllegalArgumentException error(String line, String message)
+        {
+            return new IllegalArgumentException("Line " + lineNumber + " '" + line + "': " + message);
+        }
+    }
+    
+    private static int skipSpaces(String line, int pos)
+    {
+        while (pos < line.length() && Character.isWhitespace(line.charAt(pos)))
+        {
+            pos++;
+        }
+        return pos;
+    }
+    
+    private static int skipWord(String line, int pos)
+    {
+        while (pos < line.length() && !Character.isWhitespace(line.charAt(pos)))
+        {
+            pos++;
+        }
+        return pos;
+    }
+    
+    private static int skipDigits(String line, int pos)
+    {
+        while (pos < line.length() && line.charAt(pos) >= '0' && line.charAt(pos) <= '9')
+        {
+            pos++;
+        }
+        return pos;
     }
 }
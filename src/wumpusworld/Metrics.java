@@ -0,0 +1,253 @@
+package wumpusworld;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the hot paths of the simulator. They
+ * are enabled with the system property wumpusworld.metrics=true or the
+ * Metrics=on setting. ENABLED is a constant, so when metrics are disabled
+ * the JIT compiler removes every 'if (Metrics.ENABLED)' block and the hot
+ * paths cost nothing extra.
+ * <p>
+ * Counters are LongAdders, so worker threads of the parallel simulator do
+ * not contend. Histograms have one bucket per power of two.
+ */
+public class Metrics implements MetricsMXBean
+{
+    public static final boolean ENABLED = Boolean.getBoolean("wumpusworld.metrics") || Config.getMetrics();
+    // Every n:th World.doAction of a world is timed, starting with the first,
+    // since timing costs more than the action
+    public static final int WORLD_ACTION_SAMPLE = 64;
+    
+    public static final LongAdder worldActions = new LongAdder();
+    public static final Histogram worldActionTime = new Histogram();
+    public static final Histogram decisionTime = new Histogram();
+    public static final Histogram findPathTime = new Histogram();
+    public static final LongAdder findPathExpansions = new LongAdder();
+    public static final LongAdder makeMaskCalls = new LongAdder();
+    public static final LongAdder utilityHits = new LongAdder();
+    public static final LongAdder utilityMisses = new LongAdder();
+    public static final Histogram flushTime = new Histogram();
+    public static final LongAdder flushBytes = new LongAdder();
+    
+    static
+    {
+        if (ENABLED)
+        {
+            try
+            {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new Metrics(),
+                        new ObjectName("wumpusworld:type=Metrics"));
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    private Metrics()
+    {
+    }
+    
+    /**
+     * Prints a summary of all metrics, if metrics are enabled.
+     */
+    public static void printSummary()
+    {
+        if (ENABLED)
+            System.out.print(summary());
+    }
+    
+    /**
+     * Returns a summary of all metrics.
+     * 
+     * @return Summary, one metric per line
+     */
+    public static String summary()
+    {
+        StringBuilder sb = new StringBuilder("Metrics:\n");
+        sb.append(String.format("  World.doAction      %12d calls, sampled %s%n", worldActions.sum(), worldActionTime));
+        sb.append(String.format("  MyAgent.doAction    %12d calls, %s%n", decisionTime.count(), decisionTime));
+        sb.append(String.format("  FindPath            %12d calls, %s, %d expansions%n", findPathTime.count(), findPathTime, findPathExpansions.sum()));
+        sb.append(String.format("  MakeMask            %12d calls%n", makeMaskCalls.sum()));
+        sb.append(String.format("  Utility lookups     %12d hits, %d misses, table size %d%n", utilityHits.sum(), utilityMisses.sum(), UtilityTable.shared().size()));
+        sb.append(String.format("  Database flushes    %12d flushes, %s, %d bytes%n", flushTime.count(), flushTime, flushBytes.sum()));
+        return sb.toString();
+    }
+    
+    @Override
+    public long getWorldActions()
+    {
+        return worldActions.sum();
+    }
+    
+    @Override
+    public long getSampledWorldActionMeanNanos()
+    {
+        return worldActionTime.mean();
+    }
+    
+    @Override
+    public long getDecisions()
+    {
+        return decisionTime.count();
+    }
+    
+    @Override
+    public long getDecisionMeanNanos()
+    {
+        return decisionTime.mean();
+    }
+    
+    @Override
+    public long getDecisionP99Nanos()
+    {
+        return decisionTime.percentile(0.99);
+    }
+    
+    @Override
+    public long getFindPathCalls()
+    {
+        return findPathTime.count();
+    }
+    
+    @Override
+    public long getFindPathExpansions()
+    {
+        return findPathExpansions.sum();
+    }
+    
+    @Override
+    public long getFindPathMeanNanos()
+    {
+        return findPathTime.mean();
+    }
+    
+    @Override
+    public long getMakeMaskCalls()
+    {
+        return makeMaskCalls.sum();
+    }
+    
+    @Override
+    public long getUtilityHits()
+    {
+        return utilityHits.sum();
+    }
+    
+    @Override
+    public long getUtilityMisses()
+    {
+        return utilityMisses.sum();
+    }
+    
+    @Override
+    public int getUtilityTableSize()
+    {
+        return UtilityTable.shared().size();
+    }
+    
+    @Override
+    public long getDatabaseFlushes()
+    {
+        return flushTime.count();
+    }
+    
+    @Override
+    public long getDatabaseFlushBytes()
+    {
+        return flushBytes.sum();
+    }
+    
+    @Override
+    public long getDatabaseFlushMeanNanos()
+    {
+        return flushTime.mean();
+    }
+    
+    @Override
+    public String getSummary()
+    {
+        return summary();
+    }
+    
+    /**
+     * Histogram of nanosecond durations, with one bucket per power of two.
+     * Bucket b holds values from 2^(b-1) to 2^b - 1.
+     */
+    public static class Histogram
+    {
+        private final AtomicLongArray buckets = new AtomicLongArray(64);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        
+        /**
+         * Adds a duration.
+         * 
+         * @param nanos Duration in nanoseconds
+         */
+        public void record(long nanos)
+        {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+            count.increment();
+            sum.add(nanos);
+        }
+        
+        /**
+         * Returns the number of durations.
+         * 
+         * @return Number of durations
+         */
+        public long count()
+        {
+            return count.sum();
+        }
+        
+        /**
+         * Returns the mean duration.
+         * 
+         * @return Mean in nanoseconds, or 0 if there are no durations
+         */
+        public long mean()
+        {
+            long n = count.sum();
+            return n == 0 ? 0 : sum.sum() / n;
+        }
+        
+        /**
+         * Returns an upper bound for a percentile, the top of the bucket
+         * it falls in.
+         * 
+         * @param p Percentile, from 0 to 1
+         * @return Upper bound in nanoseconds
+         */
+        public long percentile(double p)
+        {
+            long n = count.sum();
+            if (n == 0)
+                return 0;
+            long rank = (long)Math.ceil(p * n);
+            long seen = 0;
+            for (int b = 0; b < 64; b++)
+            {
+                seen += buckets.get(b);
+                if (seen >= rank && seen > 0)
+                    return b == 0 ? 0 : (1L << b) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+        
+        @Override
+        public String toString()
+        {
+            if (count() == 0)
+                return "no samples";
+            return String.format("mean %d ns, p50 < %d ns, p99 < %d ns", mean(), percentile(0.5) + 1, percentile(0.99) + 1);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package wumpusworld;
+
+/**
+ * JMX view of the hot-path metrics, registered as wumpusworld:type=Metrics
+ * when metrics are enabled. Times are in nanoseconds.
+ */
+public interface MetricsMXBean
+{
+    long getWorldActions();
+    
+    long getSampledWorldActionMeanNanos();
+    
+    long getDecisions();
+    
+    long getDecisionMeanNanos();
+    
+    long getDecisionP99Nanos();
+    
+    long getFindPathCalls();
+    
+    long getFindPathExpansions();
+    
+    long getFindPathMeanNanos();
+    
+    long getMakeMaskCalls();
+    
+    long getUtilityHits();
+    
+    long getUtilityMisses();
+    
+    int getUtilityTableSize();
+    
+    long getDatabaseFlushes();
+    
+    long getDatabaseFlushBytes();
+    
+    long getDatabaseFlushMeanNanos();
+    
+    /**
+     * Returns the summary that is printed at the end of a run.
+     * 
+     * @return Summary, one metric per line
+     */
+    String getSummary();
+}
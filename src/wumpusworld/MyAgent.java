@@ -7,29 +7,32 @@ package wumpusworld;
  * @author Johan Hagelbäck
  */
 
-import sun.plugin2.message.BestJREAvailableMessage;
-
-import java.io.*;
-import java.lang.reflect.Array;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
 
-import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-
 public class MyAgent implements Agent
 {
-    private static final String databaseFileName = "database.botdb";
-
     //Contains unexplored squares that we can move to
     private ArrayList<Tile> openList = new ArrayList<>();
+    // Squares in the open list, same index as maskCache
+    private boolean[] inOpenList;
     // Index is bitmask for board, value is utility value.
     // The bitmask is a representation of a square and its 8 surrounding squares
-    private HashMap<Integer, Integer> utilityValues = new HashMap<>();
+    private UtilityTable utilityValues;
+    // If false, learned utility values are never written to the database file
+    private boolean persist = true;
+    // Private utility values of an agent that leaves the table unchanged, or null
+    private UtilityOverlay overlay;
     private World w;
+    // Bitmask of each square (see MakeMask), or 0 if it must be rebuilt.
+    // Index is x * (size + 1) + y. A mask only changes when a square around it is
+    // revealed, or when the wumpus dies and all stench disappears
+    private int[] maskCache;
+    // Squares the agent has seen revealed, same index as maskCache
+    private boolean[] known;
+    private boolean wumpusAlive;
+    // World.getRevealCount() when the mask cache was last updated
+    private int revealCount;
+    private PathFinder pathFinder;
 
     /**
      * Creates a new instance of your solver agent.
@@ -40,85 +43,136 @@ public class MyAgent implements Agent
     {
         w = world;
         ReadUtilityValuesFromFile();
+        InitMaskCache();
+        pathFinder = new PathFinder(w);
+    }
+
+    /**
+     * Creates an agent that learns into the given utility table, but never
+     * writes it to the database file.
+     *
+     * @param world Current world state 
+     * @param utilityValues Utility table to use
+     */
+    public MyAgent(World world, UtilityTable utilityValues)
+    {
+        w = world;
+        this.utilityValues = utilityValues;
+        persist = false;
+        InitMaskCache();
+        pathFinder = new PathFinder(w);
+    }
+
+    /**
+     * Creates an agent that learns into an overlay, leaving the shared table
+     * of the overlay unchanged. Many agents can share one table from any
+     * thread, each with its own overlay.
+     *
+     * @param world Current world state 
+     * @param overlay Overlay of the utility table to use
+     */
+    public MyAgent(World world, UtilityOverlay overlay)
+    {
+        this(world, overlay.getTable());
+        this.overlay = overlay;
     }
 
     private void ReadUtilityValuesFromFile()
     {
-        // Read all lines and save into array list
-        File file = new File(databaseFileName);
-        // Check if file exists. If it doesn't, create it
-        if (!file.exists())
+        // The database file is only read once, all agents share the same table
+        utilityValues = UtilityTable.shared();
+    }
+
+    public void WriteUtilityValuesToFile()
+    {
+        utilityValues.save();
+    }
+
+    // Set up the mask cache, remembering which squares are already revealed
+    private void InitMaskCache()
+    {
+        int stride = w.getSize() + 1;
+        maskCache = new int[stride * stride];
+        known = new boolean[stride * stride];
+        inOpenList = new boolean[stride * stride];
+        for (int x = 1; x <= w.getSize(); x++)
         {
-            try
+            for (int y = 1; y <= w.getSize(); y++)
             {
-                file.createNewFile();
-                return; // No need to read anything
-            }
-            catch (IOException e)
-            {
-                e.printStackTrace();
+                known[x * stride + y] = !w.isUnknown(x, y);
             }
         }
+        wumpusAlive = w.wumpusAlive();
+        revealCount = w.getRevealCount();
+    }
 
-        try
+    // Update the mask cache after squares may have been revealed,
+    // or the wumpus killed
+    private void UpdateMaskCache()
+    {
+        if (wumpusAlive && !w.wumpusAlive())
         {
-            //Read the whole database file and copy the contents to the arraylist
-            DataInputStream inputStream = new DataInputStream(new FileInputStream(databaseFileName));
-
-            int utilityValuesSize = inputStream.readInt();
+            // All stench is gone, so every mask can change
+            wumpusAlive = false;
+            Arrays.fill(maskCache, 0);
+        }
 
-            for(int i = 0; i < utilityValuesSize; ++i)
-            {
-                utilityValues.put(inputStream.readInt(), inputStream.readInt());
-            }
-            inputStream.close();
+        int count = w.getRevealCount();
+        if (count == revealCount)
+            return;
+        int stride = w.getSize() + 1;
+        int x = w.getPlayerX();
+        int y = w.getPlayerY();
+        if (count == revealCount + 1 && !known[x * stride + y] && !w.isUnknown(x, y))
+        {
+            // The agent's own move revealed the square it stands on
+            known[x * stride + y] = true;
+            ClearMasksAround(x, y);
         }
-        catch (IOException e)
+        else
         {
-            e.printStackTrace();
+            // Several squares changed, for example by moves made in the GUI
+            for (int sx = 1; sx <= w.getSize(); sx++)
+            {
+                for (int sy = 1; sy <= w.getSize(); sy++)
+                {
+                    if (known[sx * stride + sy] == w.isUnknown(sx, sy))
+                    {
+                        known[sx * stride + sy] = !known[sx * stride + sy];
+                        ClearMasksAround(sx, sy);
+                    }
+                }
+            }
         }
+        revealCount = count;
     }
 
-    public void WriteUtilityValuesToFile()
+    // Clear the cached masks that include a square
+    private void ClearMasksAround(int x, int y)
     {
-        // Failsafe in case values haven't been read
-        if(utilityValues.size() == 0)
-            return;
-
-        try
+        int stride = w.getSize() + 1;
+        // The square is part of the masks of itself and its 8 surrounding squares
+        for (int nx = Math.max(1, x - 1); nx <= Math.min(w.getSize(), x + 1); nx++)
         {
-            // Create temporary file in case shutdown happens while writing
-            Path tempFilePath = Paths.get(databaseFileName + ".temp");
-            if(Files.exists(tempFilePath))
-                Files.delete(tempFilePath);
-
-            Files.createFile(tempFilePath);
-            DataOutputStream outputStream = new DataOutputStream(new FileOutputStream(tempFilePath.toString()));
-
-            // Write the number of utlityvalues, then write
-            // every bitmask-utilityvalue pair to the file
-            outputStream.writeInt(utilityValues.size());
-
-            for(Map.Entry<Integer, Integer> entry : utilityValues.entrySet())
-                {
-                    // Write bitmask and utility value
-                    outputStream.writeInt(entry.getKey());
-                    outputStream.writeInt(entry.getValue());
-                }
-
-            outputStream.close();
-
-            //Copy all contents from the temp file to the real database file
-            Path filePath = Paths.get(databaseFileName);
-            if(Files.exists(filePath))
-                Files.delete(filePath);
-
-            Files.move(tempFilePath, filePath);
+            for (int ny = Math.max(1, y - 1); ny <= Math.min(w.getSize(), y + 1); ny++)
+            {
+                maskCache[nx * stride + ny] = 0;
+            }
         }
-        catch (IOException e)
+    }
+
+    // Get the bitmask of a tile, building it only if a square around it has changed
+    private int GetMask(Tile tile)
+    {
+        int i = tile.x * (w.getSize() + 1) + tile.y;
+        int mask = maskCache[i];
+        // Real masks always have bit 18 set, so 0 means not built
+        if (mask == 0)
         {
-            e.printStackTrace();
+            mask = MakeMask(tile);
+            maskCache[i] = mask;
         }
+        return mask;
     }
 
     /**
@@ -131,11 +185,37 @@ public class MyAgent implements Agent
      *
      * */
     public void doAction()
+    {
+        FlightEvents.Decision event = new FlightEvents.Decision();
+        event.begin();
+        if (Metrics.ENABLED)
+        {
+            long start = System.nanoTime();
+            Decide();
+            Metrics.decisionTime.record(System.nanoTime() - start);
+        }
+        else
+            Decide();
+        if (event.shouldCommit())
+        {
+            event.x = w.getPlayerX();
+            event.y = w.getPlayerY();
+            event.frontier = openList.size();
+            event.score = w.getScore();
+            event.commit();
+        }
+    }
+
+    // Make one decision, see doAction
+    private void Decide()
     {
         //Do nothing if the agent has completed the game or died
         if(w.gameOver())
             return;
 
+        // Catch up with squares revealed since the last decision
+        UpdateMaskCache();
+
         //Get location of the player
         int cX = w.getPlayerX();
         int cY = w.getPlayerY();
@@ -146,7 +226,7 @@ public class MyAgent implements Agent
         //Grab Gold if we can.
         if (w.hasGlitter(cX, cY))
         {
-            w.doAction(World.A_GRAB);
+            w.doAction(World.ACTION_GRAB);
             return;
         }
 
@@ -154,7 +234,7 @@ public class MyAgent implements Agent
         //We are in a pit. Climb up.
         if (w.isInPit())
         {
-            w.doAction(World.A_CLIMB);
+            w.doAction(World.ACTION_CLIMB);
             return;
         }
 
@@ -178,10 +258,11 @@ public class MyAgent implements Agent
             int nextY = cY + offset[i][1];
             if (w.isValidPosition(nextX, nextY) && w.isUnknown(nextX, nextY))
             {
-                Tile currentTile = new Tile(nextX, nextY);
-                if (!openList.contains(currentTile))
+                int index = nextX * (w.getSize() + 1) + nextY;
+                if (!inOpenList[index])
                 {
-                    openList.add(currentTile);
+                    inOpenList[index] = true;
+                    openList.add(new Tile(nextX, nextY));
                 }
             }
         }
@@ -191,14 +272,17 @@ public class MyAgent implements Agent
         int maxUtility = Integer.MIN_VALUE;
         Tile bestTile = new Tile(0,0);
         int bestMask = 0;
-        for (Tile tile : openList)
+        int bestIndex = -1;
+        for (int i = 0; i < openList.size(); i++)
         {
+            Tile tile = openList.get(i);
             int utility = GetUtility(tile);
             if (utility > maxUtility)
             {
-                bestMask = MakeMask(tile);
+                bestMask = GetMask(tile);
                 maxUtility = utility;
                 bestTile = tile;
+                bestIndex = i;
             }
         }
 
@@ -207,7 +291,11 @@ public class MyAgent implements Agent
         // do all of them immediately, so it will look like the agent is taking many steps at once
         Move(bestTile.x, bestTile.y);
         // Remove from open list, since it is explored now
-        openList.remove(bestTile);
+        if (bestIndex >= 0)
+        {
+            openList.remove(bestIndex);
+            inOpenList[bestTile.x * (w.getSize() + 1) + bestTile.y] = false;
+        }
 
         // See how good this move was.
         // If nothing bad happens, it is a good move
@@ -225,28 +313,41 @@ public class MyAgent implements Agent
 
         // Save the newly learned utility into the arraylist
         maxUtility += utility;
-        utilityValues.put(bestMask, maxUtility);
+        if (overlay != null)
+            overlay.put(bestMask, maxUtility);
+        else
+            utilityValues.put(bestMask, maxUtility);
 
         // Write all utility values of all the situations the agent has
-        // been experienced to the database file,so it can remember next time the application runs
-        WriteUtilityValuesToFile();
+        // been experienced to the database file,so it can remember next time the application runs.
+        // With write-behind turned on, the background writer does this instead,
+        // and a logged table has already appended the change to its log.
+        if (persist)
+        {
+            if (UtilityWriter.isEnabled())
+                UtilityWriter.update();
+            else if (!utilityValues.isLogged())
+                WriteUtilityValuesToFile();
+        }
     }
 
     // Get the utility of a specific tile
     private int GetUtility(Tile tile)
     {
-        //Make a bitmask that represents the square and its surroundings
-        int bitMask = MakeMask(tile);
-        if(utilityValues.containsKey(bitMask))
-            return utilityValues.get(bitMask);
-        else
-            // Note: If this situation is new, we will give it a utility of 0
-            utilityValues.put(bitMask, 0);
-        return 0;
+        //Get the bitmask that represents the square and its surroundings
+        int bitMask = GetMask(tile);
+        // Note: If this situation is new, it is added with a utility of 0
+        if (overlay != null)
+            return overlay.getUtility(bitMask);
+        return utilityValues.getUtility(bitMask);
     }
 
-    private int MakeMask(Tile tile)
+    // Build the bitmask of a tile from the world. Package-private for the benchmarks
+    int MakeMask(Tile tile)
     {
+        if (Metrics.ENABLED)
+            Metrics.makeMaskCalls.increment();
+
         // When deciding how good a tile is, the agent will check it and the 8 surrounding tiles,
         // and consider if they has breeze, stench, and/or is unknown.
         // So the bit mask will track these things
@@ -256,7 +357,7 @@ public class MyAgent implements Agent
         final int unknown = 4;   //2^2
 
         // Build bit mask for surrounding tiles
-        int bitMask = 1 << 18;
+        int bitMask = 0;
         // For each tile in the 3x3 grid (i.e. the tile and 8 surrounding ones)
         for (int y = -1; y < 2; y++)
         {
@@ -282,7 +383,10 @@ public class MyAgent implements Agent
                 }
             }
         }
-        return bitMask;
+        // A canonical table shares one value between rotated and mirrored situations
+        if (utilityValues.isCanonical())
+            return Symmetry.canonical(bitMask);
+        return bitMask | Symmetry.LEGACY_MARKER;
     }
 
     // Move the player to tile at position (x,y)
@@ -310,12 +414,13 @@ public class MyAgent implements Agent
             // If player is next to the only unexplored spot left on the map
             // and wumpus is alive, shoot it before entering the square
             if (i == 0 && w.wumpusAlive() && openList.size() == 1 && w.hasArrow())
-                w.doAction(World.A_SHOOT);
+                w.doAction(World.ACTION_SHOOT);
             //Move forward
-            w.doAction(World.A_MOVE);
+            w.doAction(World.ACTION_MOVE);
+            UpdateMaskCache();
             // If we entered a pit, climb
             if (w.isInPit())
-                w.doAction(World.A_CLIMB);
+                w.doAction(World.ACTION_CLIMB);
         }
     }
 
@@ -338,131 +443,41 @@ public class MyAgent implements Agent
 
         // Turn right if it gives us the desired direction
         if ((w.getDirection() + 1) % 4 == targetDir)
-            w.doAction(World.A_TURN_RIGHT);
+            w.doAction(World.ACTION_TURN_RIGHT);
         else // Otherwise keep spinning left unless we face the right way
             while (w.getDirection() != targetDir)
             {
-                w.doAction(World.A_TURN_LEFT);
+                w.doAction(World.ACTION_TURN_LEFT);
             }
     }
 
-    // Find a path of tiles from the player to (x,y) using A* pathfinding
+    // Find a path of tiles from the player to (x,y) using A* pathfinding.
+    // The path is returned from (x,y) back to the tile after the player
     private ArrayList<Tile> FindPath(int startX, int startY, int goalX, int goalY)
     {
-        // Used to iterate over all neighbours
-        int offset[][] = new int[][]
-                {
-                        {-1, 0}
-                        , {1, 0}
-                        , {0, 1}
-                        , {0, -1}
-                };
-
-        class Node
+        FlightEvents.FindPath event = new FlightEvents.FindPath();
+        event.begin();
+        ArrayList<Tile> path;
+        if (Metrics.ENABLED)
         {
-            public int x;
-            public int y;
-            public int gValue;
-            public int hValue;
-            public Node parent;
-
-            public Node(int x, int y, int gValue, int hValue)
-            {
-                this.x = x;
-                this.y = y;
-                this.gValue = gValue;
-                this.hValue = hValue;
-            }
-
-            @Override
-            public boolean equals(Object o)
-            {
-                if (this == o) return true;
-                if (o == null || getClass() != o.getClass()) return false;
-
-                Node node = (Node) o;
-
-                if (x != node.x) return false;
-                return y == node.y;
-
-            }
+            long start = System.nanoTime();
+            path = pathFinder.findPath(startX, startY, goalX, goalY);
+            Metrics.findPathTime.record(System.nanoTime() - start);
+            Metrics.findPathExpansions.add(pathFinder.getExpansions());
         }
-
-        ArrayList<Node> openList = new ArrayList<>();
-        ArrayList<Node> closedList = new ArrayList<>();
-
-        openList.add(new Node(startX, startY, 0, 0));
-
-
-        // Iterate until we found our goal
-        while (!openList.isEmpty())
+        else
+            path = pathFinder.findPath(startX, startY, goalX, goalY);
+        if (event.shouldCommit())
         {
-            // Sort the open list by the sum of g- and h-values
-            Collections.sort(openList, (o1, o2) -> o1.gValue + o1.hValue > o2.gValue + o2.hValue ? 1 : -1);
-
-            Node currentNode = openList.get(0);
-            openList.remove(0);
-            closedList.add(currentNode);
-            // Check if we've found our goal
-            if (currentNode.x == goalX && currentNode.y == goalY)
-            {
-                // Construct list of tiles to traverse and return
-                ArrayList<Tile> pathList = new ArrayList<>();
-                while (currentNode.parent != null)
-                {
-                    pathList.add(new Tile(currentNode.x, currentNode.y));
-                    currentNode = currentNode.parent;
-                }
-                return pathList;
-            }
-
-            for (int i = 0; i < 4; ++i)
-            {
-                int nextX = currentNode.x + offset[i][0];
-                int nextY = currentNode.y + offset[i][1];
-                // Check if next is the goal, and add to list right away
-                if(nextX == goalX && nextY == goalY)
-                {
-                    openList.add(new Node(nextX, nextY, 0, 0));
-                    openList.get(openList.size()-1).parent = currentNode;
-                    break;
-                }
-                // Make sure its an interesting node to add to open list
-                if (w.isValidPosition(nextX, nextY) && // Needs to be valid
-                        !w.isUnknown(nextX, nextY) && // Needs to be known
-                        !closedList.contains(new Node(nextX, nextY, 0, 0))) // Needs to not already be in closed list
-                {
-                    // Calculate gvalue
-                    int gValue = 1;
-                    if (w.hasPit(nextX, nextY))
-                        gValue = 50; // Value could be tweaked, but pits are bad
-                    int hValue = Math.abs(goalX - nextX) + Math.abs(goalY - nextY);
-
-                    Node newNode = new Node(nextX, nextY, currentNode.gValue + gValue, hValue);
-                    boolean found = false;
-                    for (int j = 0; j < openList.size(); j++)
-                    {
-                        if (openList.get(j).equals(newNode))
-                        {
-                            // Check if current node is better parent
-                            if (currentNode.gValue + currentNode.hValue < openList.get(j).parent.gValue + openList.get(j).parent.hValue)
-                            {
-                                openList.get(j).parent = currentNode;
-                            }
-                            found = true;
-                        }
-                    }
-                    if (!found)
-                    {
-                        openList.add(newNode);
-                        newNode.parent = currentNode;
-                    }
-                }
-            }
+            event.startX = startX;
+            event.startY = startY;
+            event.goalX = goalX;
+            event.goalY = goalY;
+            event.pathLength = path != null ? path.size() : 0;
+            event.expansions = pathFinder.getExpansions();
+            event.commit();
         }
-        // No path was found. Return null
-        return null;
+        return path;
     }
 
 }
-
@@ -0,0 +1,215 @@
+package wumpusworld;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A* pathfinding over the known squares of a Wumpus World. The open list is
+ * a binary heap, the closed set is a bit set, and all per-square data lives
+ * in arrays indexed by square, which are reused between searches so that a
+ * search allocates nothing but the returned path.
+ * <p>
+ * Moving to a known square costs 1, or 50 if it has a pit. The goal square
+ * may be unknown and costs 1 to enter.
+ */
+public class PathFinder
+{
+    // Cost of moving into a square with a pit. Value could be tweaked, but pits are bad
+    private static final int PIT_COST = 50;
+    
+    private static final int[][] OFFSET = {{-1, 0}, {1, 0}, {0, 1}, {0, -1}};
+    
+    private final World w;
+    private final int stride;
+    // Per-square search data, valid only where visit equals the current search
+    private final int[] gValue;
+    private final int[] hValue;
+    private final int[] parent;
+    private final int[] heapIndex;
+    private final int[] visit;
+    private int search = 0;
+    // Squares that have been expanded in the current search
+    private final long[] closed;
+    // Binary heap of squares, ordered by g+h, then by h
+    private final int[] heap;
+    private int heapSize;
+    private int expansions;
+    
+    /**
+     * Creates a pathfinder for a world.
+     * 
+     * @param world The world to find paths in
+     */
+    public PathFinder(World world)
+    {
+        w = world;
+        stride = world.getSize() + 1;
+        int squares = stride * stride;
+        gValue = new int[squares];
+        hValue = new int[squares];
+        parent = new int[squares];
+        heapIndex = new int[squares];
+        visit = new int[squares];
+        closed = new long[(squares + 63) >>> 6];
+        heap = new int[squares];
+    }
+    
+    /**
+     * Returns the number of squares expanded by the last search.
+     * 
+     * @return Number of expanded squares
+     */
+    public int getExpansions()
+    {
+        return expansions;
+    }
+    
+    /**
+     * Finds the cheapest path from a square to a goal square.
+     * 
+     * @param startX Start X position
+     * @param startY Start Y position
+     * @param goalX Goal X position
+     * @param goalY Goal Y position
+     * @return Squares to walk through, from the goal back to the square after
+     * the start, or null if there is no path
+     */
+    public ArrayList<Tile> findPath(int startX, int startY, int goalX, int goalY)
+    {
+        search++;
+        Arrays.fill(closed, 0L);
+        heapSize = 0;
+        expansions = 0;
+        
+        int start = startX * stride + startY;
+        int goal = goalX * stride + goalY;
+        open(start, -1, 0, Math.abs(goalX - startX) + Math.abs(goalY - startY));
+        
+        while (heapSize > 0)
+        {
+            int current = poll();
+            closed[current >>> 6] |= 1L << current;
+            expansions++;
+            
+            if (current == goal)
+            {
+                // Construct list of tiles to traverse and return
+                ArrayList<Tile> pathList = new ArrayList<>();
+                while (parent[current] != -1)
+                {
+                    pathList.add(new Tile(current / stride, current % stride));
+                    current = parent[current];
+                }
+                return pathList;
+            }
+            
+            int cX = current / stride;
+            int cY = current % stride;
+            for (int i = 0; i < 4; ++i)
+            {
+                int nextX = cX + OFFSET[i][0];
+                int nextY = cY + OFFSET[i][1];
+                boolean isGoal = nextX == goalX && nextY == goalY;
+                // The goal may be unknown, any other square must be valid and known
+                if (!isGoal && (!w.isValidPosition(nextX, nextY) || w.isUnknown(nextX, nextY)))
+                    continue;
+                int next = nextX * stride + nextY;
+                if ((closed[next >>> 6] & (1L << next)) != 0)
+                    continue;
+                
+                int cost = !isGoal && w.hasPit(nextX, nextY) ? PIT_COST : 1;
+                int g = gValue[current] + cost;
+                if (visit[next] != search)
+                {
+                    open(next, current, g, Math.abs(goalX - nextX) + Math.abs(goalY - nextY));
+                }
+                else if (g < gValue[next])
+                {
+                    // Found a cheaper way to a square in the open list
+                    gValue[next] = g;
+                    parent[next] = current;
+                    siftUp(heapIndex[next]);
+                }
+            }
+        }
+        // No path was found. Return null
+        return null;
+    }
+    
+    /**
+     * Adds a square to the open list.
+     */
+    private void open(int square, int from, int g, int h)
+    {
+        visit[square] = search;
+        gValue[square] = g;
+        hValue[square] = h;
+        parent[square] = from;
+        heap[heapSize] = square;
+        heapIndex[square] = heapSize;
+        siftUp(heapSize++);
+    }
+    
+    /**
+     * Removes and returns the best square in the open list.
+     */
+    private int poll()
+    {
+        int best = heap[0];
+        heapSize--;
+        if (heapSize > 0)
+        {
+            heap[0] = heap[heapSize];
+            heapIndex[heap[0]] = 0;
+            siftDown(0);
+        }
+        return best;
+    }
+    
+    /**
+     * Checks if square a should be expanded before square b.
+     */
+    private boolean before(int a, int b)
+    {
+        int fa = gValue[a] + hValue[a];
+        int fb = gValue[b] + hValue[b];
+        if (fa != fb) return fa < fb;
+        return hValue[a] < hValue[b];
+    }
+    
+    private void siftUp(int i)
+    {
+        int square = heap[i];
+        while (i > 0)
+        {
+            int p = (i - 1) >>> 1;
+            if (!before(square, heap[p]))
+                break;
+            heap[i] = heap[p];
+            heapIndex[heap[i]] = i;
+            i = p;
+        }
+        heap[i] = square;
+        heapIndex[square] = i;
+    }
+    
+    private void siftDown(int i)
+    {
+        int square = heap[i];
+        while (true)
+        {
+            int child = 2 * i + 1;
+            if (child >= heapSize)
+                break;
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child]))
+                child++;
+            if (!before(heap[child], square))
+                break;
+            heap[i] = heap[child];
+            heapIndex[heap[i]] = i;
+            i = child;
+        }
+        heap[i] = square;
+        heapIndex[square] = i;
+    }
+}
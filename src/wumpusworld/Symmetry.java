@@ -0,0 +1,178 @@
+package wumpusworld;
+
+import java.util.Arrays;
+
+/**
+ * Maps the 3x3 neighbourhood bitmasks built by MyAgent to a canonical
+ * representative under the 8 symmetries of the grid (4 rotations, each
+ * optionally mirrored). Rotated and mirrored versions of the same local
+ * situation then share one utility value, which makes the utility table
+ * smaller and lets the agent learn from every orientation at once.
+ * <p>
+ * A neighbourhood is 9 squares of 3 bits (breeze, stench, unknown), square
+ * (x,y) for x,y in -1..1 at bit 3 * ((x+1) + (y+1)*3). Canonical bitmasks
+ * have bit 27 set, so they never collide with 0 or the legacy bitmasks,
+ * which have bit 18 set.
+ */
+public class Symmetry
+{
+    // Set in every canonical bitmask
+    public static final int CANONICAL_MARKER = 1 << 27;
+    // Set in every legacy bitmask, on top of the breeze bit of square (-1,1)
+    public static final int LEGACY_MARKER = 1 << 18;
+    
+    private static final int SYMMETRIES = 8;
+    // For every symmetry, the image of 3 squares (9 bits) at a time
+    private static final int[][][] tables = new int[SYMMETRIES][3][512];
+    
+    static
+    {
+        for (int s = 0; s < SYMMETRIES; s++)
+        {
+            // Where each of the 9 squares ends up under this symmetry
+            int[] target = new int[9];
+            for (int square = 0; square < 9; square++)
+            {
+                int x = square % 3 - 1;
+                int y = square / 3 - 1;
+                // Rotate s % 4 quarter turns, then mirror if s >= 4
+                for (int r = 0; r < s % 4; r++)
+                {
+                    int t = x;
+                    x = -y;
+                    y = t;
+                }
+                if (s >= 4)
+                    x = -x;
+                target[square] = (x + 1) + (y + 1) * 3;
+            }
+            
+            for (int chunk = 0; chunk < 3; chunk++)
+            {
+                for (int v = 0; v < 512; v++)
+                {
+                    int image = 0;
+                    for (int i = 0; i < 3; i++)
+                    {
+                        int bits = (v >>> (3 * i)) & 7;
+                        image |= bits << (3 * target[chunk * 3 + i]);
+                    }
+                    tables[s][chunk][v] = image;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns the image of a neighbourhood under one symmetry.
+     * 
+     * @param cells Neighbourhood, 27 bits
+     * @param symmetry Symmetry, 0 to 7
+     * @return The transformed neighbourhood
+     */
+    public static int transform(int cells, int symmetry)
+    {
+        int[][] t = tables[symmetry];
+        return t[0][cells & 511] | t[1][(cells >>> 9) & 511] | t[2][(cells >>> 18) & 511];
+    }
+    
+    /**
+     * Returns the canonical bitmask of a neighbourhood: the smallest of its
+     * 8 images, with the canonical marker set.
+     * 
+     * @param cells Neighbourhood, 27 bits
+     * @return Canonical bitmask
+     */
+    public static int canonical(int cells)
+    {
+        int min = cells;
+        for (int s = 1; s < SYMMETRIES; s++)
+        {
+            min = Math.min(min, transform(cells, s));
+        }
+        return min | CANONICAL_MARKER;
+    }
+    
+    /**
+     * Converts utility values with legacy bitmasks to canonical bitmasks.
+     * A utility value estimates how good a situation is, so bitmasks that
+     * become the same canonical bitmask get the mean of their values. The
+     * legacy marker hides whether square (-1,1) has a breeze, so a legacy
+     * value counts half towards each of the two possible situations.
+     * 
+     * @param base Values from the database file
+     * @param changes Values that replace or are added to the base values
+     * @return Map from canonical bitmask to utility value
+     */
+    public static IntIntMap migrate(UtilityIndex base, IntIntMap changes)
+    {
+        Means means = new Means();
+        for (int i = 0; i < base.size(); i++)
+        {
+            if (!changes.containsKey(base.keyAt(i)))
+                migrate(means, base.keyAt(i), base.valueAt(i));
+        }
+        IntIntMap.Cursor entry = changes.cursor();
+        while (entry.next())
+        {
+            migrate(means, entry.key(), entry.value());
+        }
+        return means.values();
+    }
+    
+    private static void migrate(Means means, int mask, int utility)
+    {
+        int withBreeze = canonical(mask);
+        int withoutBreeze = canonical(mask & ~LEGACY_MARKER);
+        if (withoutBreeze == withBreeze)
+        {
+            means.add(withBreeze, utility, 2);
+        }
+        else
+        {
+            means.add(withBreeze, utility, 1);
+            means.add(withoutBreeze, utility, 1);
+        }
+    }
+    
+    /**
+     * Weighted means of the utility values migrated to each canonical
+     * bitmask.
+     */
+    private static final class Means
+    {
+        // Index of every canonical bitmask in sums and weights
+        private final IntIntMap slots = new IntIntMap();
+        private long[] sums = new long[64];
+        private int[] weights = new int[64];
+        
+        void add(int mask, int utility, int weight)
+        {
+            int slot = slots.get(mask, -1);
+            if (slot < 0)
+            {
+                slot = slots.size();
+                slots.put(mask, slot);
+                if (slot == sums.length)
+                {
+                    sums = Arrays.copyOf(sums, 2 * slot);
+                    weights = Arrays.copyOf(weights, 2 * slot);
+                }
+            }
+            sums[slot] += (long)utility * weight;
+            weights[slot] += weight;
+        }
+        
+        IntIntMap values()
+        {
+            IntIntMap values = new IntIntMap(slots.size());
+            IntIntMap.Cursor entry = slots.cursor();
+            while (entry.next())
+            {
+                int slot = entry.value();
+                values.put(entry.key(), (int)Math.round((double)sums[slot] / weights[slot]));
+            }
+            return values;
+        }
+    }
+}
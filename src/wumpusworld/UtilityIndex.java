@@ -0,0 +1,251 @@
+package wumpusworld;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read-only, memory-mapped utility database file. Lookups are binary
+ * searches directly in the mapped file, so a program can start and look up
+ * utility values without parsing the file or copying it to the heap.
+ * <p>
+ * File format, all ints big endian:
+ * <pre>
+ * int   magic    0x57574442 ("WWDB")
+ * int   version  2
+ * int   flags    bit 0 (FLAG_CANONICAL): the bitmasks are canonical, see {@link Symmetry}
+ * int   count
+ * int[] keys     count bitmasks, sorted ascending
+ * int[] values   count utility values, in the same order as the keys
+ * </pre>
+ * The legacy format (version 1) is a count followed by unsorted
+ * (bitmask, utility value) pairs. It can be read with {@link #readLegacy}
+ * and converted with {@link #main}.
+ */
+public class UtilityIndex
+{
+    public static final int MAGIC = 0x57574442;
+    public static final int VERSION = 2;
+    public static final int HEADER_SIZE = 16;
+    public static final int FLAG_CANONICAL = 1;
+    
+    private static final UtilityIndex EMPTY = new UtilityIndex(IntBuffer.allocate(0), IntBuffer.allocate(0), 0, 0);
+    
+    private final IntBuffer keys;
+    private final IntBuffer values;
+    private final int count;
+    private final int flags;
+    
+    private UtilityIndex(IntBuffer keys, IntBuffer values, int count, int flags)
+    {
+        this.keys = keys;
+        this.values = values;
+        this.count = count;
+        this.flags = flags;
+    }
+    
+    /**
+     * Returns an index without entries.
+     * 
+     * @return Empty index
+     */
+    public static UtilityIndex empty()
+    {
+        return EMPTY;
+    }
+    
+    /**
+     * Checks if a file is in the indexed format.
+     * 
+     * @param path Database file
+     * @return True if the file starts with the magic number
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isIndexed(Path path) throws IOException
+    {
+        if (Files.size(path) < 4)
+            return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path.toFile())))
+        {
+            return in.readInt() == MAGIC;
+        }
+    }
+    
+    /**
+     * Maps a database file in the indexed format.
+     * 
+     * @param path Database file
+     * @return The index
+     * @throws IOException If the file cannot be read or is not in the indexed format
+     */
+    public static UtilityIndex open(Path path) throws IOException
+    {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException(path + " is not an indexed utility database");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException(path + " has unsupported version " + buffer.getInt(4));
+        int count = buffer.getInt(12);
+        if (count < 0 || buffer.capacity() < HEADER_SIZE + 8L * count)
+            throw new IOException(path + " is truncated");
+        
+        buffer.position(HEADER_SIZE);
+        IntBuffer all = buffer.slice().asIntBuffer();
+        all.limit(count);
+        IntBuffer keys = all.slice();
+        all.limit(2 * count).position(count);
+        IntBuffer values = all.slice();
+        return new UtilityIndex(keys, values, count, buffer.getInt(8));
+    }
+    
+    /**
+     * Returns the number of entries.
+     * 
+     * @return Number of entries
+     */
+    public int size()
+    {
+        return count;
+    }
+    
+    /**
+     * Returns the flags from the file header.
+     * 
+     * @return Flags, a combination of the FLAG_ constants
+     */
+    public int flags()
+    {
+        return flags;
+    }
+    
+    /**
+     * Finds the position of a bitmask.
+     * 
+     * @param key Bitmask
+     * @return Position of the bitmask, or -1 if it is not in the index
+     */
+    public int find(int key)
+    {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            int k = keys.get(mid);
+            if (k < key)
+                lo = mid + 1;
+            else if (k > key)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the bitmask at a position.
+     * 
+     * @param i Position, from 0 to size()-1
+     * @return Bitmask
+     */
+    public int keyAt(int i)
+    {
+        return keys.get(i);
+    }
+    
+    /**
+     * Returns the utility value at a position.
+     * 
+     * @param i Position, from 0 to size()-1
+     * @return Utility value
+     */
+    public int valueAt(int i)
+    {
+        return values.get(i);
+    }
+    
+    /**
+     * Writes a database file in the indexed format.
+     * 
+     * @param out Stream to write to
+     * @param keys Bitmasks, sorted ascending without duplicates
+     * @param values Utility values
+     * @param count Number of entries to write
+     * @param flags Flags, a combination of the FLAG_ constants
+     * @throws IOException If writing fails
+     */
+    public static void write(DataOutputStream out, int[] keys, int[] values, int count, int flags) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(flags);
+        out.writeInt(count);
+        for (int i = 0; i < count; i++)
+        {
+            out.writeInt(keys[i]);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            out.writeInt(values[i]);
+        }
+    }
+    
+    /**
+     * Reads a database file in the legacy format.
+     * 
+     * @param path Database file
+     * @return Map from bitmask to utility value
+     * @throws IOException If the file cannot be read
+     */
+    public static IntIntMap readLegacy(Path path) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile()))))
+        {
+            if (Files.size(path) == 0)
+                return new IntIntMap();
+            
+            int count = in.readInt();
+            IntIntMap utilityValues = new IntIntMap(count);
+            for (int i = 0; i < count; ++i)
+            {
+                utilityValues.put(in.readInt(), in.readInt());
+            }
+            return utilityValues;
+        }
+    }
+    
+    /**
+     * Converts a legacy database file to the indexed format.
+     * 
+     * @param args Legacy file and output file. The output file defaults to the legacy file.
+     * @throws IOException If the conversion fails
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: UtilityIndex <legacy file> [<output file>]");
+            return;
+        }
+        Path in = Paths.get(args[0]);
+        Path out = Paths.get(args.length > 1 ? args[1] : args[0]);
+        if (isIndexed(in))
+        {
+            System.out.println(in + " is already indexed");
+            return;
+        }
+        IntIntMap utilityValues = readLegacy(in);
+        UtilityTable.writeUtilityValues(out, empty(), utilityValues, 0);
+        System.out.println("Converted " + utilityValues.size() + " entries to " + out);
+    }
+}
@@ -0,0 +1,196 @@
+package wumpusworld;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Append-only change log for the utility database. Every change to the
+ * utility table is appended as one (bitmask, utility value) record, so an
+ * update costs one small sequential write instead of rewriting the whole
+ * database file. At startup the log is replayed on top of the database
+ * file, and compaction merges it into a new database file.
+ * <p>
+ * File format, all ints big endian:
+ * <pre>
+ * int magic    0x57574c47 ("WWLG")
+ * int version  1
+ * then (int bitmask, int utility value) records, oldest first
+ * </pre>
+ * A record cut short by a crash is ignored when the log is replayed.
+ */
+public class UtilityLog
+{
+    public static final int MAGIC = 0x57574C47;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 8;
+    
+    private final Path path;
+    private FileChannel channel;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private long records;
+    
+    /**
+     * Returns the log file that belongs to a database file.
+     * 
+     * @param database Database file
+     * @return Log file
+     */
+    public static Path logPath(Path database)
+    {
+        return Paths.get(database + ".log");
+    }
+    
+    /**
+     * Opens a log for appending, creating it if it does not exist.
+     * A record cut short at the end of the log is removed.
+     * 
+     * @param path Log file
+     * @throws IOException If the log cannot be opened
+     */
+    public UtilityLog(Path path) throws IOException
+    {
+        this.path = path;
+        open();
+    }
+    
+    /**
+     * Replays a log into a map. Later records replace earlier ones.
+     * 
+     * @param path Log file
+     * @param values Map to replay into
+     * @return Number of records replayed, 0 if the log does not exist
+     * @throws IOException If the log cannot be read
+     */
+    public static long replay(Path path, IntIntMap values) throws IOException
+    {
+        if (!Files.exists(path) || Files.size(path) < HEADER_SIZE)
+            return 0;
+        
+        long complete = (Files.size(path) - HEADER_SIZE) / RECORD_SIZE;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path.toFile()))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                throw new IOException(path + " is not a utility log");
+            for (long i = 0; i < complete; i++)
+            {
+                values.put(in.readInt(), in.readInt());
+            }
+        }
+        return complete;
+    }
+    
+    /**
+     * Appends a record to the log.
+     * 
+     * @param mask Bitmask
+     * @param utility Utility value
+     * @throws IOException If writing fails
+     */
+    public void append(int mask, int utility) throws IOException
+    {
+        record.clear();
+        record.putInt(mask).putInt(utility).flip();
+        while (record.hasRemaining())
+        {
+            channel.write(record);
+        }
+        records++;
+    }
+    
+    /**
+     * Returns the number of records in the log.
+     * 
+     * @return Number of records
+     */
+    public long records()
+    {
+        return records;
+    }
+    
+    /**
+     * Removes the first records from the log, after they have been merged
+     * into the database file. The rest of the log is copied to a new log
+     * that replaces this one in one step.
+     * 
+     * @param count Number of records to remove
+     * @throws IOException If the log cannot be rewritten
+     */
+    public void truncateHead(long count) throws IOException
+    {
+        Path tempPath = Paths.get(path + ".temp");
+        try (FileChannel temp = FileChannel.open(tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            writeHeader(temp);
+            long from = HEADER_SIZE + count * RECORD_SIZE;
+            long end = HEADER_SIZE + records * RECORD_SIZE;
+            while (from < end)
+            {
+                from += channel.transferTo(from, end - from, temp);
+            }
+        }
+        channel.close();
+        Files.move(tempPath, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        open();
+    }
+    
+    /**
+     * Closes the log.
+     * 
+     * @throws IOException If closing fails
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+    
+    /**
+     * Opens the log file and positions it after the last complete record.
+     * 
+     * @throws IOException If the log cannot be opened
+     */
+    private void open() throws IOException
+    {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE)
+        {
+            channel.truncate(0);
+            writeHeader(channel);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION)
+        {
+            channel.close();
+            throw new IOException(path + " is not a utility log");
+        }
+        records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        long end = HEADER_SIZE + records * RECORD_SIZE;
+        channel.truncate(end);
+        channel.position(end);
+    }
+    
+    /**
+     * Writes the log header.
+     * 
+     * @param out Channel positioned at the start of the file
+     * @throws IOException If writing fails
+     */
+    private static void writeHeader(FileChannel out) throws IOException
+    {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining())
+        {
+            out.write(header);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package wumpusworld;
+
+import java.util.Arrays;
+
+/**
+ * Private utility values of one agent on top of a shared utility table,
+ * which the agent leaves unchanged. Many agents can play from the same
+ * table on different threads, each with its own overlay.
+ * <p>
+ * The overlay remembers every value it read from the table, and the agent
+ * keeps seeing the value it read first even if the table changes meanwhile.
+ * It also records every decision: the bitmasks read since the previous
+ * decision, and the one whose utility was set. commit() applies the overlay
+ * to the table as it is now, if the agent would have played the same on
+ * it. MyAgent moves to the first candidate with the highest utility and
+ * sets that utility to the highest utility plus a reward. A decision is
+ * the same if the same candidate comes first, and its utility is then set
+ * to the highest utility in the table plus the same reward.
+ */
+public class UtilityOverlay
+{
+    private final UtilityTable table;
+    // Values read from the table, 0 for bitmasks that were not in it
+    private final IntIntMap read = new IntIntMap();
+    // Values learned by the agent
+    private final IntIntMap learned = new IntIntMap();
+    
+    // Bitmasks in the order they were read, including repeated reads
+    private int[] reads = new int[64];
+    private int readCount = 0;
+    // For every decision: reads before it, bitmask set and reward
+    private int[] decisions = new int[48];
+    private int decisionCount = 0;
+    // True if a decision did not follow the rule above, in which case
+    // commit() requires the values read to be unchanged
+    private boolean exact = false;
+    
+    /**
+     * Creates an empty overlay.
+     * 
+     * @param table The shared table
+     */
+    public UtilityOverlay(UtilityTable table)
+    {
+        this.table = table;
+    }
+    
+    /**
+     * Returns the shared table.
+     * 
+     * @return The table
+     */
+    public UtilityTable getTable()
+    {
+        return table;
+    }
+    
+    /**
+     * Returns the utility value for a bitmask. A bitmask that is in
+     * neither the overlay nor the table has a utility value of 0.
+     * 
+     * @param mask Bitmask
+     * @return Utility value
+     */
+    public int getUtility(int mask)
+    {
+        if (readCount == reads.length)
+            reads = Arrays.copyOf(reads, 2 * readCount);
+        reads[readCount++] = mask;
+        return view(mask);
+    }
+    
+    /**
+     * Sets the utility value for a bitmask in the overlay, ending a
+     * decision.
+     * 
+     * @param mask Bitmask
+     * @param utility Utility value
+     */
+    public void put(int mask, int utility)
+    {
+        int from = decisionCount == 0 ? 0 : decisions[3 * decisionCount - 3];
+        int best = Integer.MIN_VALUE;
+        int chosen = 0;
+        for (int i = from; i < readCount; i++)
+        {
+            int value = view(reads[i]);
+            if (value > best)
+            {
+                best = value;
+                chosen = reads[i];
+            }
+        }
+        if (chosen != mask)
+            exact = true;
+        
+        if (3 * decisionCount == decisions.length)
+            decisions = Arrays.copyOf(decisions, 2 * decisions.length);
+        decisions[3 * decisionCount] = readCount;
+        decisions[3 * decisionCount + 1] = mask;
+        decisions[3 * decisionCount + 2] = utility - best;
+        decisionCount++;
+        learned.put(mask, utility);
+    }
+    
+    /**
+     * Applies the overlay to the table, if the agent would have made the
+     * same decisions on the table as it is now. Bitmasks read that are not
+     * in the table are added with a utility value of 0, as getUtility of
+     * the table does, and the learned values are set. The table must not
+     * be changed by others meanwhile.
+     * 
+     * @return False if a decision would have been different, in which
+     * case the table is unchanged
+     */
+    public boolean commit()
+    {
+        IntIntMap values;
+        if (exact)
+        {
+            IntIntMap.Cursor entry = read.cursor();
+            while (entry.next())
+            {
+                if (table.findUtility(entry.key(), 0) != entry.value())
+                    return false;
+            }
+            values = learned;
+        }
+        else
+        {
+            // Replay the decisions on the values in the table
+            values = new IntIntMap();
+            int i = 0;
+            for (int d = 0; d < decisionCount; d++)
+            {
+                int best = Integer.MIN_VALUE;
+                int chosen = 0;
+                for (; i < decisions[3 * d]; i++)
+                {
+                    int mask = reads[i];
+                    int value = values.containsKey(mask) ? values.get(mask, 0) : table.findUtility(mask, 0);
+                    if (value > best)
+                    {
+                        best = value;
+                        chosen = mask;
+                    }
+                }
+                if (chosen != decisions[3 * d + 1])
+                    return false;
+                values.put(chosen, best + decisions[3 * d + 2]);
+            }
+        }
+        
+        IntIntMap.Cursor entry = read.cursor();
+        while (entry.next())
+        {
+            table.getUtility(entry.key());
+        }
+        entry = values.cursor();
+        while (entry.next())
+        {
+            table.put(entry.key(), entry.value());
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the utility value the agent sees for a bitmask, reading it
+     * from the table the first time.
+     */
+    private int view(int mask)
+    {
+        if (learned.containsKey(mask))
+            return learned.get(mask, 0);
+        if (read.containsKey(mask))
+            return read.get(mask, 0);
+        int utility = table.findUtility(mask, 0);
+        read.put(mask, utility);
+        return utility;
+    }
+}
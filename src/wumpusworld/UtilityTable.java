@@ -0,0 +1,696 @@
+package wumpusworld;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Table of learned utility values. The key is a bitmask describing a square
+ * and its 8 surrounding squares, and the value is how good it has been to
+ * move to such a square.
+ * <p>
+ * The table is the memory-mapped database file (see {@link UtilityIndex})
+ * with the changes made since it was loaded kept on the heap. The shared
+ * table is loaded once per program run and used by every agent. All methods
+ * are safe to call from several threads.
+ * <p>
+ * With Persistence=log in config.txt, every change to the shared table is
+ * also appended to a change log (see {@link UtilityLog}), and a background
+ * thread compacts the log into the database file every compact interval.
+ * A log found at startup is always replayed, whichever mode is used.
+ */
+public class UtilityTable
+{
+    // Guards the database file against concurrent writers
+    private static final Object databaseLock = new Object();
+    // Suffix of database files moved aside because they were mapped
+    private static final String OLD_SUFFIX = ".old";
+    
+    // Database file the table was loaded from
+    private final Path path;
+    // Values in the database file when the table was loaded or last saved
+    private UtilityIndex base;
+    // Values changed or added since the table was loaded or last saved
+    private IntIntMap values;
+    // Number of bitmasks in values that are not in base
+    private int added;
+    // Flags of the database file, see UtilityIndex
+    private final int flags;
+    // Change log, or null if changes are not logged
+    private volatile UtilityLog log;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object compactLock = new Object();
+    
+    /**
+     * Holds the shared table, which is loaded the first time it is used.
+     */
+    private static class Shared
+    {
+        static final UtilityTable table = loadShared();
+    }
+    
+    /**
+     * Returns the table shared by all agents in this program run. It is
+     * read from the database file the first time.
+     * 
+     * @return The shared table
+     */
+    public static UtilityTable shared()
+    {
+        return Shared.table;
+    }
+    
+    /**
+     * Loads the shared table and, if configured, starts logging its changes.
+     * 
+     * @return The shared table
+     */
+    private static UtilityTable loadShared()
+    {
+        UtilityTable table = load(Paths.get(Config.getDatabase()));
+        if (Config.getCanonical() && !table.isCanonical())
+            table = table.migrateToCanonical();
+        if (Config.getPersistence().equals("log"))
+        {
+            try
+            {
+                table.startLog(Config.getCompactInterval());
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * Creates a table.
+     * 
+     * @param path Database file
+     * @param base Values from the database file
+     * @param values Values changed since loading. Not copied.
+     * @param added Number of bitmasks in values that are not in base
+     * @param flags Flags of the database file
+     */
+    private UtilityTable(Path path, UtilityIndex base, IntIntMap values, int added, int flags)
+    {
+        this.path = path;
+        this.base = base;
+        this.values = values;
+        this.added = added;
+        this.flags = flags;
+    }
+    
+    /**
+     * Loads a table from a database file in either the indexed or the
+     * legacy format, and replays its change log if there is one. A file
+     * in the indexed format is mapped, not read.
+     * 
+     * @param path Database file
+     * @return The table, empty if the file does not exist or cannot be read
+     */
+    public static UtilityTable load(Path path)
+    {
+        FlightEvents.DatabaseRead event = new FlightEvents.DatabaseRead();
+        event.begin();
+        UtilityIndex base = UtilityIndex.empty();
+        IntIntMap values = new IntIntMap();
+        try
+        {
+            if (!Files.exists(path))
+                recoverOldFile(path);
+            if (Files.exists(path))
+            {
+                if (UtilityIndex.isIndexed(path))
+                    base = UtilityIndex.open(path);
+                else
+                    values = UtilityIndex.readLegacy(path);
+            }
+            UtilityLog.replay(UtilityLog.logPath(path), values);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        
+        int added = 0;
+        IntIntMap.Cursor entry = values.cursor();
+        while (entry.next())
+        {
+            if (base.find(entry.key()) < 0)
+                added++;
+        }
+        if (event.shouldCommit())
+        {
+            event.path = path.toString();
+            event.values = base.size() + added;
+            event.bytes = path.toFile().length();
+            event.commit();
+        }
+        return new UtilityTable(path, base, values, added, base.flags());
+    }
+    
+    /**
+     * Starts appending every change of this table to its change log, and
+     * compacting the log in the background.
+     * 
+     * @param compactInterval Milliseconds between compactions, 0 to only compact on save
+     * @throws IOException If the log cannot be opened
+     */
+    public void startLog(final long compactInterval) throws IOException
+    {
+        lock.writeLock().lock();
+        try
+        {
+            log = new UtilityLog(UtilityLog.logPath(path));
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+        
+        if (compactInterval > 0)
+        {
+            Thread compactor = new Thread(() ->
+            {
+                while (true)
+                {
+                    try
+                    {
+                        Thread.sleep(compactInterval);
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        return;
+                    }
+                    save();
+                }
+            }, "UtilityTable compactor");
+            compactor.setDaemon(true);
+            compactor.start();
+        }
+    }
+    
+    /**
+     * Checks if the bitmasks in this table are canonical, see Symmetry.
+     * Agents must then canonicalize their bitmasks before lookups.
+     * 
+     * @return True if the bitmasks are canonical
+     */
+    public boolean isCanonical()
+    {
+        return (flags & UtilityIndex.FLAG_CANONICAL) != 0;
+    }
+    
+    /**
+     * Converts this table to canonical bitmasks, and writes the result to
+     * the database file right away, since the change log of this table
+     * holds legacy bitmasks. The old database file is kept with a '.bak'
+     * suffix.
+     * 
+     * @return The canonical table
+     */
+    UtilityTable migrateToCanonical()
+    {
+        IntIntMap migrated;
+        lock.readLock().lock();
+        try
+        {
+            migrated = Symmetry.migrate(base, values);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        UtilityTable table = new UtilityTable(path, UtilityIndex.empty(), migrated, migrated.size(),
+                flags | UtilityIndex.FLAG_CANONICAL);
+        if (size() == 0)
+            return table;
+        
+        try
+        {
+            if (Files.exists(path))
+                Files.copy(path, Paths.get(path + ".bak"), REPLACE_EXISTING);
+            table.save();
+            System.out.println("Migrated " + size() + " utility values to " + table.size() + " canonical utility values");
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        return table;
+    }
+    
+    /**
+     * Checks if changes to this table are appended to a change log, in
+     * which case they do not need to be saved.
+     * 
+     * @return True if changes are logged
+     */
+    public boolean isLogged()
+    {
+        return log != null;
+    }
+    
+    /**
+     * Creates a private copy of this table. Changes to the copy do not
+     * affect this table. The mapped database file is shared, so only the
+     * changes since loading or the last save are copied.
+     * 
+     * @return The copy
+     */
+    public UtilityTable copy()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return new UtilityTable(path, base, new IntIntMap(values), added, flags);
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns the utility value for a bitmask. A bitmask that has not
+     * been seen before is added with a utility value of 0.
+     * 
+     * @param mask Bitmask
+     * @return Utility value
+     */
+    public int getUtility(int mask)
+    {
+        lock.readLock().lock();
+        try
+        {
+            if (values.containsKey(mask))
+            {
+                if (Metrics.ENABLED) Metrics.utilityHits.increment();
+                return values.get(mask, 0);
+            }
+            int i = base.find(mask);
+            if (i >= 0)
+            {
+                if (Metrics.ENABLED) Metrics.utilityHits.increment();
+                return base.valueAt(i);
+            }
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+        
+        lock.writeLock().lock();
+        try
+        {
+            if (values.containsKey(mask))
+            {
+                if (Metrics.ENABLED) Metrics.utilityHits.increment();
+                return values.get(mask, 0);
+            }
+            // A save may have moved the value to a new base meanwhile
+            int i = base.find(mask);
+            if (i >= 0)
+            {
+                if (Metrics.ENABLED) Metrics.utilityHits.increment();
+                return base.valueAt(i);
+            }
+            if (Metrics.ENABLED) Metrics.utilityMisses.increment();
+            added++;
+            values.put(mask, 0);
+            append(mask, 0);
+            return 0;
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns the utility value for a bitmask, without adding a bitmask
+     * that has not been seen before.
+     * 
+     * @param mask Bitmask
+     * @param missing Value to return if the bitmask is not in the table
+     * @return Utility value
+     */
+    public int findUtility(int mask, int missing)
+    {
+        lock.readLock().lock();
+        try
+        {
+            if (values.containsKey(mask))
+            {
+                if (Metrics.ENABLED) Metrics.utilityHits.increment();
+                return values.get(mask, 0);
+            }
+            int i = base.find(mask);
+            if (i >= 0)
+            {
+                if (Metrics.ENABLED) Metrics.utilityHits.increment();
+                return base.valueAt(i);
+            }
+            if (Metrics.ENABLED) Metrics.utilityMisses.increment();
+            return missing;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Sets the utility value for a bitmask.
+     * 
+     * @param mask Bitmask
+     * @param utility Utility value
+     */
+    public void put(int mask, int utility)
+    {
+        lock.writeLock().lock();
+        try
+        {
+            if (!values.containsKey(mask) && base.find(mask) < 0)
+                added++;
+            values.put(mask, utility);
+            append(mask, utility);
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Returns the number of bitmasks in the table.
+     * 
+     * @return Number of entries
+     */
+    public int size()
+    {
+        lock.readLock().lock();
+        try
+        {
+            return base.size() + added;
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Writes the table to the database file, in the indexed format. Agents
+     * can keep using the table while it is being written. Afterwards the
+     * table maps the new file and only keeps the values changed since on
+     * the heap. A logged table is compacted: the log records merged into
+     * the database file are removed from the log afterwards.
+     * 
+     * @return False if writing failed, true otherwise
+     */
+    public boolean save()
+    {
+        synchronized (compactLock)
+        {
+            UtilityIndex written;
+            IntIntMap changes;
+            long logged = 0;
+            lock.readLock().lock();
+            try
+            {
+                written = base;
+                changes = new IntIntMap(values);
+                if (log != null)
+                    logged = log.records();
+            }
+            finally
+            {
+                lock.readLock().unlock();
+            }
+            
+            // Failsafe in case values haven't been read
+            if (written.size() + changes.size() == 0)
+                return true;
+            
+            try
+            {
+                UtilityIndex saved = writeUtilityValues(path, written, changes, flags);
+                
+                lock.writeLock().lock();
+                try
+                {
+                    rebase(saved, changes);
+                    if (log != null)
+                        log.truncateHead(logged);
+                }
+                finally
+                {
+                    lock.writeLock().unlock();
+                }
+                if (log == null)
+                {
+                    // The database file now contains everything in an old log
+                    Files.deleteIfExists(UtilityLog.logPath(path));
+                }
+            }
+            catch (IOException e)
+            {
+                e.printStackTrace();
+                return false;
+            }
+            return true;
+        }
+    }
+    
+    /**
+     * Replaces the base values by a newly saved database file, and drops
+     * the saved changes from the heap. Changes made while the file was
+     * written are kept. Must be called with the write lock held.
+     * 
+     * @param saved Index of the saved database file
+     * @param changes Changes that were saved
+     */
+    private void rebase(UtilityIndex saved, IntIntMap changes)
+    {
+        IntIntMap remaining = new IntIntMap();
+        int remainingAdded = 0;
+        IntIntMap.Cursor entry = values.cursor();
+        while (entry.next())
+        {
+            int mask = entry.key();
+            if (changes.containsKey(mask) && changes.get(mask, 0) == entry.value())
+                continue;
+            remaining.put(mask, entry.value());
+            if (saved.find(mask) < 0)
+                remainingAdded++;
+        }
+        // The old mapping is released once no copy of the table uses it
+        base = saved;
+        values = remaining;
+        added = remainingAdded;
+    }
+    
+    /**
+     * Appends a change to the change log, if changes are logged. Must be
+     * called with the write lock held, so that the log order matches the
+     * order of the changes.
+     * 
+     * @param mask Bitmask
+     * @param utility Utility value
+     */
+    private void append(int mask, int utility)
+    {
+        if (log == null)
+            return;
+        
+        try
+        {
+            log.append(mask, utility);
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+    }
+    
+    /**
+     * Writes utility values to a database file in the indexed format. The
+     * values are written to a temporary file first, which then replaces the
+     * database file, so the database is never left half written.
+     * <p>
+     * Windows cannot replace a file that is memory-mapped, which the
+     * database file is while a table uses it. There the mapped file is
+     * first renamed aside, which Windows allows, and deleted by a later
+     * write once it is no longer mapped.
+     * 
+     * @param path Database file
+     * @param base Values from the database file
+     * @param changes Values that replace or are added to the base values
+     * @param flags Flags for the file header, see UtilityIndex
+     * @return Index mapping the written file
+     * @throws IOException If writing fails
+     */
+    static UtilityIndex writeUtilityValues(Path path, UtilityIndex base, IntIntMap changes, int flags) throws IOException
+    {
+        FlightEvents.DatabaseWrite event = new FlightEvents.DatabaseWrite();
+        event.begin();
+        long start = Metrics.ENABLED ? System.nanoTime() : 0;
+        UtilityIndex saved;
+        
+        // Sort the changes by bitmask, packed as (bitmask, value) longs
+        long[] sorted = new long[changes.size()];
+        IntIntMap.Cursor entry = changes.cursor();
+        int n = 0;
+        while (entry.next())
+        {
+            sorted[n++] = ((long)entry.key() << 32) | (entry.value() & 0xFFFFFFFFL);
+        }
+        Arrays.sort(sorted);
+        
+        // Merge with the base values, the changes win
+        int[] keys = new int[base.size() + sorted.length];
+        int[] utilities = new int[keys.length];
+        int count = 0;
+        int b = 0;
+        int c = 0;
+        while (b < base.size() || c < sorted.length)
+        {
+            int changeKey = c < sorted.length ? (int)(sorted[c] >> 32) : 0;
+            if (c >= sorted.length || (b < base.size() && base.keyAt(b) < changeKey))
+            {
+                keys[count] = base.keyAt(b);
+                utilities[count++] = base.valueAt(b++);
+            }
+            else
+            {
+                if (b < base.size() && base.keyAt(b) == changeKey)
+                    b++;
+                keys[count] = changeKey;
+                utilities[count++] = (int)sorted[c++];
+            }
+        }
+        
+        synchronized (databaseLock)
+        {
+            // Create temporary file in case shutdown happens while writing
+            Path tempFilePath = Paths.get(path + ".temp");
+            try (DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFilePath.toFile()))))
+            {
+                UtilityIndex.write(outputStream, keys, utilities, count, flags);
+            }
+            
+            //Replace the real database file with the temp file in one step
+            try
+            {
+                Files.move(tempFilePath, path, REPLACE_EXISTING, ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e)
+            {
+                throw e;
+            }
+            catch (FileSystemException e)
+            {
+                // The database file is mapped, move it aside first
+                Files.move(path, Paths.get(path + "." + System.nanoTime() + OLD_SUFFIX));
+                Files.move(tempFilePath, path, ATOMIC_MOVE);
+            }
+            deleteOldFiles(path);
+            saved = UtilityIndex.open(path);
+        }
+        
+        if (Metrics.ENABLED)
+        {
+            Metrics.flushTime.record(System.nanoTime() - start);
+            Metrics.flushBytes.add(UtilityIndex.HEADER_SIZE + 8L * count);
+        }
+        if (event.shouldCommit())
+        {
+            event.path = path.toString();
+            event.values = count;
+            event.bytes = UtilityIndex.HEADER_SIZE + 8L * count;
+            event.commit();
+        }
+        return saved;
+    }
+    
+    /**
+     * Deletes database files moved aside by earlier writes, see
+     * writeUtilityValues. Files that are still mapped are left for later.
+     * 
+     * @param path Database file
+     */
+    private static void deleteOldFiles(Path path)
+    {
+        for (Path old : oldFiles(path))
+        {
+            try
+            {
+                Files.deleteIfExists(old);
+            }
+            catch (IOException e)
+            {
+                // Still mapped, try again on the next write
+            }
+        }
+    }
+    
+    /**
+     * Puts back the newest database file moved aside, if the program
+     * stopped before the new database file took its place.
+     * 
+     * @param path Database file, which does not exist
+     * @throws IOException If the file cannot be moved back
+     */
+    private static void recoverOldFile(Path path) throws IOException
+    {
+        Path newest = null;
+        for (Path old : oldFiles(path))
+        {
+            if (newest == null || Files.getLastModifiedTime(old).compareTo(Files.getLastModifiedTime(newest)) > 0)
+                newest = old;
+        }
+        if (newest != null)
+            Files.move(newest, path, ATOMIC_MOVE);
+    }
+    
+    /**
+     * Lists the database files moved aside by earlier writes.
+     * 
+     * @param path Database file
+     * @return The old files
+     */
+    private static List<Path> oldFiles(Path path)
+    {
+        List<Path> files = new ArrayList<>();
+        Path dir = path.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dir))
+            return files;
+        String glob = path.getFileName() + ".*" + OLD_SUFFIX;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob))
+        {
+            for (Path old : stream)
+            {
+                files.add(old);
+            }
+        }
+        catch (IOException e)
+        {
+            e.printStackTrace();
+        }
+        return files;
+    }
+}
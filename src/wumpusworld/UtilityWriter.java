@@ -0,0 +1,139 @@
+package wumpusworld;
+
+/**
+ * Write-behind persistence for the utility database. Instead of rewriting
+ * the database file after every decision, agents mark the shared utility
+ * table as changed and a background thread writes it every flush interval,
+ * or after a number of finished episodes (see config.txt). The latest
+ * values are always written when the program shuts down.
+ */
+public class UtilityWriter
+{
+    private static final long flushInterval = Config.getFlushInterval();
+    private static final int flushEpisodes = Config.getFlushEpisodes();
+    
+    private static final Object lock = new Object();
+    private static final Object flushLock = new Object();
+    //True if the utility values have changed since the last flush
+    private static boolean dirty = false;
+    private static boolean flushRequested = false;
+    private static int episodes = 0;
+    private static Thread writer;
+    
+    /**
+     * Checks if write-behind persistence is turned on.
+     * 
+     * @return True if a flush interval or episode count is set
+     */
+    public static boolean isEnabled()
+    {
+        return flushInterval > 0 || flushEpisodes > 0;
+    }
+    
+    /**
+     * Tells the writer that the shared utility table has changed.
+     */
+    public static void update()
+    {
+        synchronized (lock)
+        {
+            dirty = true;
+            if (writer == null)
+            {
+                start();
+            }
+        }
+    }
+    
+    /**
+     * Tells the writer that an episode has ended. Requests a flush
+     * every flush episode count.
+     */
+    public static void episodeFinished()
+    {
+        synchronized (lock)
+        {
+            if (flushEpisodes > 0 && ++episodes >= flushEpisodes)
+            {
+                episodes = 0;
+                flushRequested = true;
+                lock.notifyAll();
+            }
+        }
+    }
+    
+    /**
+     * Writes the shared utility table to the database file if it has
+     * changed. If another flush is running, waits for it first. If the
+     * write fails the table stays marked as changed, so the next flush,
+     * at the latest the one at shutdown, tries again.
+     */
+    public static void flush()
+    {
+        synchronized (flushLock)
+        {
+            synchronized (lock)
+            {
+                flushRequested = false;
+                if (!dirty)
+                    return;
+                dirty = false;
+            }
+            if (!UtilityTable.shared().save())
+            {
+                synchronized (lock)
+                {
+                    dirty = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Starts the background writer and registers the shutdown flush.
+     */
+    private static void start()
+    {
+        writer = new Thread(UtilityWriter::run, "UtilityWriter");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(UtilityWriter::flush, "UtilityWriter shutdown"));
+    }
+    
+    /**
+     * Background writer loop. Flushes when the interval has passed or
+     * a flush has been requested.
+     */
+    private static void run()
+    {
+        while (true)
+        {
+            synchronized (lock)
+            {
+                long deadline = System.currentTimeMillis() + flushInterval;
+                try
+                {
+                    while (!flushRequested)
+                    {
+                        if (flushInterval == 0)
+                        {
+                            lock.wait();
+                        }
+                        else
+                        {
+                            long left = deadline - System.currentTimeMillis();
+                            if (left <= 0)
+                                break;
+                            lock.wait(left);
+                        }
+                    }
+                }
+                catch (InterruptedException ex)
+                {
+                    return;
+                }
+            }
+            flush();
+        }
+    }
+}
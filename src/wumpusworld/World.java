@@ -1,18 +1,41 @@
 package wumpusworld;
 
-import java.util.Vector;
+import java.util.Arrays;
 
 /**
  * This class handles an instance of the Wumpus World. It contains the world
  * state, which actions are available, and updates the world when an action
  * has been executed.
+ * <p>
+ * The world is stored as one bit set per percept layer (breeze, stench, pit,
+ * Wumpus, glitter and unknown). Square (x,y) is bit x*(size+1)+y in every
+ * layer, so all percept queries are single bit tests.
+ * <p>
+ * Layers are copy-on-write: a snapshot (see {@link #snapshot()}) shares the
+ * layers of the world, and a layer is only copied when it is changed while
+ * shared. Taking and restoring a snapshot is therefore constant time.
  * 
  * @author Johan Hagelbäck
  */
 public class World 
 {
     private int size;
-    private String[][] w;
+    private int stride;
+    private long[] breeze;
+    private long[] stench;
+    private long[] pit;
+    private long[] wumpus;
+    private long[] glitter;
+    private long[] unknown;
+    // Layers shared with snapshots or clones, which must be copied before they are changed
+    private int shared = 0;
+    // Undo journal, see startJournal(). JOURNAL_FRAME ints per action
+    private boolean journaling = false;
+    private int[] journal;
+    private int journalSize = 0;
+    // Wumpus and stench layers from before the Wumpus was killed, if that is journaled
+    private long[] killedWumpus;
+    private long[] killedStench;
     private int pX = 1;
     private int pY = 1;
     private boolean wumpusAlive = true;
@@ -21,6 +44,30 @@ public class World
     private boolean hasGold = false;
     private boolean gameOver = false;   
     private int score = 0;
+    // Number of actions, used to sample action times for Metrics
+    private int actions = 0;
+    // Grows by one when a square is revealed, by more on other changes to the unknown squares
+    private int revealCount = 0;
+    
+    //Layer bits for the shared mask.
+    private static final int L_BREEZE = 1;
+    private static final int L_STENCH = 2;
+    private static final int L_PIT = 4;
+    private static final int L_WUMPUS = 8;
+    private static final int L_GLITTER = 16;
+    private static final int L_UNKNOWN = 32;
+    private static final int L_ALL = 63;
+    
+    //Journal frame layout: player square, direction and flags, score, cleared bit.
+    private static final int JOURNAL_FRAME = 4;
+    private static final int J_WUMPUS_ALIVE = 1 << 2;
+    private static final int J_HAS_ARROW = 1 << 3;
+    private static final int J_IN_PIT = 1 << 4;
+    private static final int J_HAS_GOLD = 1 << 5;
+    private static final int J_GAME_OVER = 1 << 6;
+    private static final int J_KILLED = 1 << 7;
+    private static final int J_GRAB = 1 << 8;
+    private static final int J_SHARED_SHIFT = 9;
     
     //Player Directions constants.
     public static final int DIR_UP = 0;
@@ -48,6 +95,15 @@ public class World
     public static final String A_TURN_LEFT = "l";
     public static final String A_TURN_RIGHT = "r";
     
+    //Action codes, used by the allocation free doAction(int).
+    public static final int ACTION_MOVE = 0;
+    public static final int ACTION_GRAB = 1;
+    public static final int ACTION_CLIMB = 2;
+    public static final int ACTION_SHOOT = 3;
+    public static final int ACTION_TURN_LEFT = 4;
+    public static final int ACTION_TURN_RIGHT = 5;
+    public static final int ACTION_UNKNOWN = -1;
+    
     /**
      * Creates a new Wumpus World. The Wumpus World works with
      * any size 4 or larger, but only size 4 is supported by
@@ -57,28 +113,120 @@ public class World
      */
     public World(int size)
     {
-        this.size = size;
-        w = new String[size+1][size+1];
+        initLayers(size);
+        Arrays.fill(unknown, -1L);
+        
+        setVisited(1, 1);
+    }
+
+    /**
+     * Creates a Wumpus World from a grid of percept strings, where each
+     * square contains the percept constants that apply to it.
+     * 
+     * @param w1 Percept grid, indexed [x][y] from 0 to size
+     * @param size Size of the world.
+     * @param px Player X position
+     * @param py Player Y position
+     * @param dirr Player direction (see direction constants)
+     */
+    public World(String[][] w1,int size, int px, int py, int dirr)
+    {
+        initLayers(size);
+        pX=px;
+        pY=py;
+        dir = dirr;
         
         for (int x = 0; x <= size; x++)
         {
             for (int y = 0; y <= size; y++)
             {
-                w[x][y] = UNKNOWN;
+                int i = index(x, y);
+                if (w1[x][y].contains(BREEZE)) set(breeze, i);
+                if (w1[x][y].contains(STENCH)) set(stench, i);
+                if (w1[x][y].contains(PIT)) set(pit, i);
+                if (w1[x][y].contains(WUMPUS)) set(wumpus, i);
+                if (w1[x][y].contains(GLITTER)) set(glitter, i);
+                if (w1[x][y].contains(UNKNOWN)) set(unknown, i);
             }
         }
-        
-        setVisited(1, 1);
     }
-
-    public World(String[][] w1,int size, int px, int py, int dirr)
+    
+    /**
+     * Creates a Wumpus World in the state of a snapshot.
+     * 
+     * @param s The snapshot
+     */
+    private World(Snapshot s)
+    {
+        size = s.size;
+        stride = size + 1;
+        restore(s);
+    }
+    
+    /**
+     * Allocates empty percept layers for a world of the given size.
+     * 
+     * @param size Size of the world.
+     */
+    private void initLayers(int size)
     {
         this.size = size;
-        pX=px;
-        pY=py;
-        dir = dirr;
-        this.w=w1;
+        stride = size + 1;
+        int words = (stride * stride + 63) >>> 6;
+        breeze = new long[words];
+        stench = new long[words];
+        pit = new long[words];
+        wumpus = new long[words];
+        glitter = new long[words];
+        unknown = new long[words];
+    }
+    
+    /**
+     * Returns the bit index of a square in the percept layers.
+     * 
+     * @param x X position
+     * @param y Y position
+     * @return Bit index
+     */
+    private int index(int x, int y)
+    {
+        return x * stride + y;
+    }
+    
+    /**
+     * Checks if a bit is set in a percept layer.
+     * 
+     * @param layer Percept layer
+     * @param i Bit index
+     * @return True if the bit is set
+     */
+    private static boolean test(long[] layer, int i)
+    {
+        return (layer[i >>> 6] & (1L << i)) != 0;
+    }
+    
+    /**
+     * Sets a bit in a percept layer.
+     * 
+     * @param layer Percept layer
+     * @param i Bit index
+     */
+    private static void set(long[] layer, int i)
+    {
+        layer[i >>> 6] |= 1L << i;
+    }
+    
+    /**
+     * Clears a bit in a percept layer.
+     * 
+     * @param layer Percept layer
+     * @param i Bit index
+     */
+    private static void clear(long[] layer, int i)
+    {
+        layer[i >>> 6] &= ~(1L << i);
     }
+    
     /**
      * Returns the current score.
      * 
@@ -192,12 +340,9 @@ public class World
     public boolean hasBreeze(int x, int y)
     {
         if (!isValidPosition(x,y)) return false;
-        if (isUnknown(x,y)) return false;
         
-        if (w[x][y].contains(BREEZE))
-            return true;
-        else
-            return false;
+        int i = index(x, y);
+        return !test(unknown, i) && test(breeze, i);
     }
     
     /**
@@ -212,12 +357,9 @@ public class World
     public boolean hasStench(int x, int y)
     {
         if (!isValidPosition(x,y)) return false;
-        if (isUnknown(x,y)) return false;
         
-        if (w[x][y].contains(STENCH))
-            return true;
-        else
-            return false;
+        int i = index(x, y);
+        return !test(unknown, i) && test(stench, i);
     }
     
     /**
@@ -232,12 +374,9 @@ public class World
     public boolean hasGlitter(int x, int y)
     {
         if (!isValidPosition(x,y)) return false;
-        if (isUnknown(x,y)) return false;
         
-        if (w[x][y].contains(GLITTER))
-            return true;
-        else
-            return false;
+        int i = index(x, y);
+        return !test(unknown, i) && test(glitter, i);
     }
     
     /**
@@ -252,12 +391,9 @@ public class World
     public boolean hasPit(int x, int y)
     {
         if (!isValidPosition(x,y)) return false;
-        if (isUnknown(x,y)) return false;
         
-        if (w[x][y].contains(PIT))
-            return true;
-        else
-            return false;
+        int i = index(x, y);
+        return !test(unknown, i) && test(pit, i);
     }
     
     /**
@@ -272,12 +408,9 @@ public class World
     public boolean hasWumpus(int x, int y)
     {
         if (!isValidPosition(x,y)) return false;
-        if (isUnknown(x,y)) return false;
         
-        if (w[x][y].contains(WUMPUS))
-            return true;
-        else
-            return false;
+        int i = index(x, y);
+        return !test(unknown, i) && test(wumpus, i);
     }
     
      /**
@@ -311,6 +444,19 @@ public class World
         return !isUnknown(x, y);
     }
     
+    /**
+     * Returns a counter of changes to the unknown squares, for agents that
+     * cache what they know about the squares. The counter grows by exactly
+     * one when one square is revealed, and by more when the unknown squares
+     * change in any other way, such as an undo or a restore.
+     * 
+     * @return The counter
+     */
+    public int getRevealCount()
+    {
+        return revealCount;
+    }
+    
     /**
      * Checks if a square is unknown. Returns false
      * if the position is invalid.
@@ -323,10 +469,7 @@ public class World
     {
         if (!isValidPosition(x,y)) return false;
         
-        if (w[x][y].contains(UNKNOWN))
-            return true;
-        else
-            return false;  
+        return test(unknown, index(x, y));
     }
     
     /**
@@ -351,17 +494,14 @@ public class World
      * 
      * @param x X position
      * @param y Y position
-     * @param s Percept to add (see Percept constants)
+     * @param layer Percept layer to add to
      */
-    private void append(int x, int y, String s)
+    private void append(int x, int y, long[] layer)
     {
         if (!isValidPosition(x,y))
             return;
         
-        if (!w[x][y].contains(s))
-        {
-            w[x][y] += s;
-        }
+        set(layer, index(x, y));
     }
     
     /**
@@ -372,33 +512,247 @@ public class World
      */
     public void addWumpus(int x, int y)
     {
-        if (!w[x][y].contains(WUMPUS))
+        if (isValidPosition(x,y) && !test(wumpus, index(x, y)))
         {
-            append(x,y,WUMPUS);
-            append(x-1,y,STENCH);
-            append(x+1,y,STENCH);
-            append(x,y-1,STENCH);
-            append(x,y+1,STENCH);
+            wumpus = own(wumpus, L_WUMPUS);
+            stench = own(stench, L_STENCH);
+            append(x,y,wumpus);
+            append(x-1,y,stench);
+            append(x+1,y,stench);
+            append(x,y-1,stench);
+            append(x,y+1,stench);
         }
     }
     
+    /**
+     * Creates a copy of this Wumpus World, with the complete state. The
+     * copy shares the percept layers with this world until either of them
+     * changes a layer.
+     * 
+     * @return The copy
+     */
     public World cloneWorld()
     {
-        //this.size = size;
-        String[][] w1 = new String[size+1][size+1];
-        int px,py,dirr;
-        px=pX;
-        py=pY;
-        dirr=dir;
-        for (int x = 0; x <= size; x++)
+        return new World(snapshot());
+    }
+    
+    /**
+     * Captures the complete state of this Wumpus World. This is constant
+     * time: the snapshot shares the percept layers, which the world copies
+     * before it changes one of them.
+     * 
+     * @return The snapshot
+     */
+    public Snapshot snapshot()
+    {
+        shared = L_ALL;
+        return new Snapshot(this);
+    }
+    
+    /**
+     * Returns this Wumpus World to the state of a snapshot. This is
+     * constant time, and the snapshot can be restored again later.
+     * 
+     * @param s Snapshot of a world of the same size
+     */
+    public void restore(Snapshot s)
+    {
+        if (s.size != size)
+            throw new IllegalArgumentException("Snapshot of size " + s.size + " in a world of size " + size);
+        breeze = s.breeze;
+        stench = s.stench;
+        pit = s.pit;
+        wumpus = s.wumpus;
+        glitter = s.glitter;
+        unknown = s.unknown;
+        shared = L_ALL;
+        pX = s.pX;
+        pY = s.pY;
+        dir = s.dir;
+        wumpusAlive = s.wumpusAlive;
+        hasArrow = s.hasArrow;
+        isInPit = s.isInPit;
+        hasGold = s.hasGold;
+        gameOver = s.gameOver;
+        score = s.score;
+        journalSize = 0;
+        revealCount += 2;
+    }
+    
+    /**
+     * Starts recording every action in an undo journal, so that actions
+     * can be taken back with undo(). This lets a search try an action,
+     * look at the result and back out without copying the world.
+     */
+    public void startJournal()
+    {
+        journaling = true;
+        if (journal == null)
+            journal = new int[JOURNAL_FRAME * 64];
+        journalSize = 0;
+    }
+    
+    /**
+     * Stops recording actions and forgets the journal.
+     */
+    public void stopJournal()
+    {
+        journaling = false;
+        journalSize = 0;
+    }
+    
+    /**
+     * Returns the number of actions that can be taken back.
+     * 
+     * @return Number of journaled actions
+     */
+    public int getJournalDepth()
+    {
+        return journalSize / JOURNAL_FRAME;
+    }
+    
+    /**
+     * Takes back the last journaled action, in constant time. Restoring a
+     * snapshot clears the journal.
+     * 
+     * @return True if an action was taken back, false if the journal is empty
+     */
+    public boolean undo()
+    {
+        if (journalSize == 0)
+            return false;
+        journalSize -= JOURNAL_FRAME;
+        int square = journal[journalSize];
+        int flags = journal[journalSize + 1];
+        int cleared = journal[journalSize + 3];
+        
+        pX = square / stride;
+        pY = square % stride;
+        dir = flags & 3;
+        wumpusAlive = (flags & J_WUMPUS_ALIVE) != 0;
+        hasArrow = (flags & J_HAS_ARROW) != 0;
+        isInPit = (flags & J_IN_PIT) != 0;
+        hasGold = (flags & J_HAS_GOLD) != 0;
+        gameOver = (flags & J_GAME_OVER) != 0;
+        score = journal[journalSize + 2];
+        
+        if (cleared >= 0)
         {
-            for (int y = 0; y <= size; y++)
+            // The action either grabbed the gold or revealed a square
+            if ((flags & J_GRAB) != 0)
+            {
+                glitter = own(glitter, L_GLITTER);
+                set(glitter, cleared);
+            }
+            else
             {
-                w1[x][y]= w[x][y];
+                unknown = own(unknown, L_UNKNOWN);
+                set(unknown, cleared);
+                revealCount += 2;
             }
         }
+        if ((flags & J_KILLED) != 0)
+        {
+            wumpus = killedWumpus;
+            stench = killedStench;
+            killedWumpus = null;
+            killedStench = null;
+            shared |= (flags >>> J_SHARED_SHIFT) & (L_WUMPUS | L_STENCH);
+        }
+        return true;
+    }
+    
+    /**
+     * Pushes the state before an action onto the undo journal.
+     * 
+     * @param action Action code
+     */
+    private void record(int action)
+    {
+        if (journalSize == journal.length)
+            journal = Arrays.copyOf(journal, journal.length * 2);
+        int flags = dir;
+        if (wumpusAlive) flags |= J_WUMPUS_ALIVE;
+        if (hasArrow) flags |= J_HAS_ARROW;
+        if (isInPit) flags |= J_IN_PIT;
+        if (hasGold) flags |= J_HAS_GOLD;
+        if (gameOver) flags |= J_GAME_OVER;
+        if (action == ACTION_GRAB) flags |= J_GRAB;
+        journal[journalSize] = index(pX, pY);
+        journal[journalSize + 1] = flags;
+        journal[journalSize + 2] = score;
+        journal[journalSize + 3] = -1;
+        journalSize += JOURNAL_FRAME;
+    }
+    
+    /**
+     * Returns a layer that this world may change, copying it if it is
+     * shared with a snapshot.
+     * 
+     * @param layer The layer
+     * @param bit Layer bit of the layer
+     * @return The layer, or a copy of it
+     */
+    private long[] own(long[] layer, int bit)
+    {
+        if ((shared & bit) == 0)
+            return layer;
+        shared &= ~bit;
+        return layer.clone();
+    }
+    
+    /**
+     * The complete state of a Wumpus World at one point in time. A
+     * snapshot is immutable, so it can be restored any number of times.
+     */
+    public static final class Snapshot
+    {
+        private final int size;
+        private final long[] breeze;
+        private final long[] stench;
+        private final long[] pit;
+        private final long[] wumpus;
+        private final long[] glitter;
+        private final long[] unknown;
+        private final int pX;
+        private final int pY;
+        private final int dir;
+        private final boolean wumpusAlive;
+        private final boolean hasArrow;
+        private final boolean isInPit;
+        private final boolean hasGold;
+        private final boolean gameOver;
+        private final int score;
         
-        return new World(w1,size,px,py,dirr);
+        private Snapshot(World w)
+        {
+            size = w.size;
+            breeze = w.breeze;
+            stench = w.stench;
+            pit = w.pit;
+            wumpus = w.wumpus;
+            glitter = w.glitter;
+            unknown = w.unknown;
+            pX = w.pX;
+            pY = w.pY;
+            dir = w.dir;
+            wumpusAlive = w.wumpusAlive;
+            hasArrow = w.hasArrow;
+            isInPit = w.isInPit;
+            hasGold = w.hasGold;
+            gameOver = w.gameOver;
+            score = w.score;
+        }
+        
+        /**
+         * Returns the score of the world when the snapshot was taken.
+         * 
+         * @return The score
+         */
+        public int getScore()
+        {
+            return score;
+        }
     }
     
     /**
@@ -409,13 +763,15 @@ public class World
      */
     public void addPit(int x, int y)
     {
-        if (!w[x][y].contains(PIT))
+        if (isValidPosition(x,y) && !test(pit, index(x, y)))
         {
-            append(x,y,PIT);
-            append(x-1,y,BREEZE);
-            append(x+1,y,BREEZE);
-            append(x,y-1,BREEZE);
-            append(x,y+1,BREEZE);
+            pit = own(pit, L_PIT);
+            breeze = own(breeze, L_BREEZE);
+            append(x,y,pit);
+            append(x-1,y,breeze);
+            append(x+1,y,breeze);
+            append(x,y-1,breeze);
+            append(x,y+1,breeze);
         }
     }
     
@@ -427,10 +783,8 @@ public class World
      */
     public void addGold(int x, int y)
     {
-        if (!w[x][y].contains(GLITTER))
-        {
-            append(x,y,GLITTER);
-        }
+        glitter = own(glitter, L_GLITTER);
+        append(x,y,glitter);
     }
     
     /**
@@ -441,10 +795,14 @@ public class World
      */
     private void setVisited(int x, int y)
     {
-        if (w[x][y].contains(UNKNOWN))
-        {
-            w[x][y] = w[x][y].replaceAll(UNKNOWN, "");
-        }
+        int i = index(x, y);
+        if (!test(unknown, i))
+            return;
+        unknown = own(unknown, L_UNKNOWN);
+        clear(unknown, i);
+        revealCount++;
+        if (journaling)
+            journal[journalSize - 1] = i;
     }
     
     /**
@@ -455,57 +813,110 @@ public class World
      */
     public boolean doAction(String a)
     {
-        if (gameOver) return false;
-        
-        //Each action costs 1 score
-        score -= 1;
-        
-        if (a.equals(A_MOVE))
-        {
-            if (!isInPit)
-            {
-                if (dir == DIR_LEFT) return move(pX-1,pY);
-                if (dir == DIR_RIGHT) return move(pX+1,pY);
-                if (dir == DIR_UP) return move(pX,pY+1);
-                if (dir == DIR_DOWN) return move(pX,pY-1);
-            }
-        }
-        if (a.equals(A_TURN_LEFT))
-        {
-            dir--;
-            if (dir < 0) dir = 3;
-            return true;
-        }
-        if (a.equals(A_TURN_RIGHT))
+        return doAction(actionCode(a));
+    }
+    
+    /**
+     * Converts an action string to its action code.
+     * 
+     * @param a Action string (see Action constants)
+     * @return Action code, or ACTION_UNKNOWN if the string is not an action.
+     */
+    public static int actionCode(String a)
+    {
+        switch (a)
         {
-            dir++;
-            if (dir > 3) dir = 0;
-            return true;
+            case A_MOVE: return ACTION_MOVE;
+            case A_GRAB: return ACTION_GRAB;
+            case A_CLIMB: return ACTION_CLIMB;
+            case A_SHOOT: return ACTION_SHOOT;
+            case A_TURN_LEFT: return ACTION_TURN_LEFT;
+            case A_TURN_RIGHT: return ACTION_TURN_RIGHT;
+            default: return ACTION_UNKNOWN;
         }
-        if (a.equals(A_GRAB))
+    }
+    
+    /**
+     * Executes an action in the Wumpus World. Unknown action codes
+     * cost 1 score and fail, as unknown action strings do.
+     * 
+     * @param action Action code (see Action code constants)
+     * @return True if the action was successful, false if action failed.
+     */
+    public boolean doAction(int action)
+    {
+        if (Metrics.ENABLED)
         {
-            if (hasGlitter(pX,pY))
+            Metrics.worldActions.increment();
+            if (actions++ % Metrics.WORLD_ACTION_SAMPLE == 0)
             {
-                w[pX][pY] = w[pX][pY].replaceAll(GLITTER, "");
-                score += 1000;
-                hasGold = true;
-                gameOver = true;
-                return true;
+                long start = System.nanoTime();
+                boolean result = act(action);
+                Metrics.worldActionTime.record(System.nanoTime() - start);
+                return result;
             }
         }
-        if (a.equals(A_SHOOT))
+        return act(action);
+    }
+    
+    /**
+     * Executes an action in the Wumpus World.
+     * 
+     * @param action Action code (see Action code constants)
+     * @return True if the action was successful, false if action failed.
+     */
+    private boolean act(int action)
+    {
+        if (journaling) record(action);
+        if (gameOver) return false;
+        
+        //Each action costs 1 score
+        score -= 1;
+        
+        switch (action)
         {
-            if (hasArrow)
-            {
-                score -= 10;
-                hasArrow = false;
-                shoot();
+            case ACTION_MOVE:
+                if (!isInPit)
+                {
+                    if (dir == DIR_LEFT) return move(pX-1,pY);
+                    if (dir == DIR_RIGHT) return move(pX+1,pY);
+                    if (dir == DIR_UP) return move(pX,pY+1);
+                    if (dir == DIR_DOWN) return move(pX,pY-1);
+                }
+                break;
+            case ACTION_TURN_LEFT:
+                dir--;
+                if (dir < 0) dir = 3;
                 return true;
-            }
-        }
-        if (a.equals(A_CLIMB))
-        {
-            isInPit = false;
+            case ACTION_TURN_RIGHT:
+                dir++;
+                if (dir > 3) dir = 0;
+                return true;
+            case ACTION_GRAB:
+                if (hasGlitter(pX,pY))
+                {
+                    glitter = own(glitter, L_GLITTER);
+                    clear(glitter, index(pX, pY));
+                    if (journaling)
+                        journal[journalSize - 1] = index(pX, pY);
+                    score += 1000;
+                    hasGold = true;
+                    gameOver = true;
+                    return true;
+                }
+                break;
+            case ACTION_SHOOT:
+                if (hasArrow)
+                {
+                    score -= 10;
+                    hasArrow = false;
+                    shoot();
+                    return true;
+                }
+                break;
+            case ACTION_CLIMB:
+                isInPit = false;
+                break;
         }
         
         //Action failed
@@ -521,28 +932,28 @@ public class World
         {
             for (int x = pX; x <= size; x++)
             {
-                if (w[x][pY].contains(WUMPUS)) removeWumpus();
+                if (test(wumpus, index(x, pY))) removeWumpus();
             }
         }
         if (dir == DIR_LEFT)
         {
             for (int x = pX; x >= 0; x--)
             {
-                if (w[x][pY].contains(WUMPUS)) removeWumpus();
+                if (test(wumpus, index(x, pY))) removeWumpus();
             }
         }
         if (dir == DIR_UP)
         {
             for (int y = pY; y <= size; y++)
             {
-                if (w[pX][y].contains(WUMPUS)) removeWumpus();
+                if (test(wumpus, index(pX, y))) removeWumpus();
             }
         }
         if (dir == DIR_DOWN)
         {
             for (int y = pY; y >= 0; y--)
             {
-                if (w[pX][y].contains(WUMPUS)) removeWumpus();
+                if (test(wumpus, index(pX, y))) removeWumpus();
             }
         }
     }
@@ -553,14 +964,28 @@ public class World
      */
     private void removeWumpus()
     {
-        for (int x = 1; x <= 4; x++)
+        if (journaling && wumpusAlive)
         {
-            for (int y = 1; y <= 4; y++)
-            {
-                w[x][y] = w[x][y].replaceAll(WUMPUS, "");
-                w[x][y] = w[x][y].replaceAll(STENCH, "");
-            }
+            // Keep the layers for undo, and remember if they were shared
+            killedWumpus = wumpus;
+            killedStench = stench;
+            journal[journalSize - 3] |= J_KILLED | (shared & (L_WUMPUS | L_STENCH)) << J_SHARED_SHIFT;
+            wumpus = new long[wumpus.length];
+            stench = new long[stench.length];
+        }
+        // Shared layers are replaced instead of copied and cleared
+        else
+        {
+            if ((shared & L_WUMPUS) != 0)
+                wumpus = new long[wumpus.length];
+            else
+                Arrays.fill(wumpus, 0L);
+            if ((shared & L_STENCH) != 0)
+                stench = new long[stench.length];
+            else
+                Arrays.fill(stench, 0L);
         }
+        shared &= ~(L_WUMPUS | L_STENCH);
         
         wumpusAlive = false;
     }
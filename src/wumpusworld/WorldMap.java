@@ -1,5 +1,6 @@
 package wumpusworld;
 
+import java.util.BitSet;
 import java.util.Vector;
 import java.awt.Point;
 
@@ -14,7 +15,9 @@ public class WorldMap
     private int size;
     private Point wumpus;
     private Point gold;
-    private Vector<Point> pits;
+
+    // Pit squares, bit (x-1) * size + (y-1)
+    private BitSet pits;
     
     /**
      * Creates a new map instance.
@@ -24,7 +27,7 @@ public class WorldMap
     public WorldMap(int size)
     {
         this.size = size;
-        pits = new Vector<Point>();
+        pits = new BitSet();
     }
     
     /**
@@ -50,14 +53,16 @@ public class WorldMap
     }
     
     /**
-     * Adds a pit. The map can have any number of pits.
+     * Adds a pit. The map can have any number of pits. A pit
+     * outside the map is ignored, as World does.
      * 
      * @param x X position
      * @param y Y position
      */
     public void addPit(int x, int y)
     {
-        pits.add(new Point(x,y));
+        if (x >= 1 && y >= 1 && x <= size && y <= size)
+            pits.set((x - 1) * size + (y - 1));
     }
     
     /**
@@ -91,13 +96,28 @@ public class WorldMap
     }
     
     /**
-     * Returns positions for all pits.
+     * Returns positions for all pits, ordered by x and then y.
      * 
-     * @return A list of positions for pits
+     * @return A new list of positions for pits
      */
     public Vector<Point> getPits()
     {
-        return pits;
+        Vector<Point> list = new Vector<Point>(pits.cardinality());
+        for (int i = pits.nextSetBit(0); i >= 0; i = pits.nextSetBit(i + 1))
+        {
+            list.add(new Point(i / size + 1, i % size + 1));
+        }
+        return list;
+    }
+    
+    /**
+     * Returns the number of pits.
+     * 
+     * @return Number of pits
+     */
+    public int getPitCount()
+    {
+        return pits.cardinality();
     }
     
     /**
@@ -109,14 +129,9 @@ public class WorldMap
      */
     public boolean hasPit(int x, int y)
     {
-        for (Point p:pits)
-        {
-            if (p.x == x && p.y == y)
-            {
-                return true;
-            }
-        }
-        return false;
+        if (x < 1 || y < 1 || x > size || y > size)
+            return false;
+        return pits.get((x - 1) * size + (y - 1));
     }
     
     /**
@@ -129,9 +144,9 @@ public class WorldMap
         World w = new World(size);
         w.addWumpus(wumpus.x, wumpus.y);
         w.addGold(gold.x, gold.y);
-        for (int i = 0; i < pits.size(); i++)
+        for (int i = pits.nextSetBit(0); i >= 0; i = pits.nextSetBit(i + 1))
         {
-            w.addPit(pits.get(i).x, pits.get(i).y);
+            w.addPit(i / size + 1, i % size + 1);
         }
         return w;
     }
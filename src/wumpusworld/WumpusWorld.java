@@ -1,22 +1,40 @@
 package wumpusworld;
 
-import java.util.Vector;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 /**
  * Starting class for the Wumpus World program. The program
- * has three options: 1) Run a GUI where the Wumpus World can be
- * solved step by step manually or by an agent, or 2) run
+ * has six options: 1) Run a GUI where the Wumpus World can be
+ * solved step by step manually or by an agent, 2) run
  * a simulation with random worlds over a number of games,
- * or 3) run a simulation over the worlds read from a map file.
+ * 3) run a simulation over the worlds read from a map file,
+ * 4) train the agent headless over a stream of random worlds,
+ * 5) evaluate the agent on every possible 4x4 world,
+ * or 6) evaluate the agent on the worlds of the map file
+ * in parallel, without learning.
  * 
  * @author Johan Hagelbäck
  */
 public class WumpusWorld {
 
     /**
-     * @param args the command line arguments
+     * @param args the command line arguments, overriding settings in
+     * the config file, e.g. 'Option=sim Threads=4'
      */
     public static void main(String[] args)
     {
+        Config.load(args);
         WumpusWorld ww = new WumpusWorld();
     }
     
@@ -40,6 +58,24 @@ public class WumpusWorld {
         {
             runSimulatorDB();
         }
+        if (option.equalsIgnoreCase("train"))
+        {
+            runTraining();
+        }
+        if (option.equalsIgnoreCase("exhaustive"))
+        {
+            runExhaustive();
+        }
+        if (option.equalsIgnoreCase("evaluate"))
+        {
+            runEvaluation();
+        }
+        
+        //The GUI runs on after this, the other options have finished
+        if (!option.equalsIgnoreCase("gui"))
+        {
+            Metrics.printSummary();
+        }
     }
     
     /**
@@ -52,21 +88,70 @@ public class WumpusWorld {
     
     /**
      * Starts the program in simulator mode with
-     * maps read from a data file.
+     * maps read from a data file. The maps are read
+     * while they are played.
      */
     private void runSimulatorDB()
     {
-        MapReader mr = new MapReader();
-        Vector<WorldMap> maps = mr.readMaps();
-        
-        double totScore = 0;
-        for (int i = 0; i < maps.size(); i++)
+        try (Stream<WorldMap> maps = readMaps())
         {
-            World w = maps.get(i).generateWorld();
-            totScore += (double)runSimulation(w);
+            int threads = Config.getThreads();
+            if (threads > 0)
+            {
+                runParallelSimulation(maps.iterator(), threads);
+                return;
+            }
+            
+            double totScore = 0;
+            int count = 0;
+            Iterator<WorldMap> it = maps.iterator();
+            while (it.hasNext())
+            {
+                World w = it.next().generateWorld();
+                totScore += (double)runSimulation(w, count);
+                count++;
+            }
+            totScore = totScore / (double)count;
+            System.out.println("Average score: " + totScore);
         }
-        totScore = totScore / (double)maps.size();
-        System.out.println("Average score: " + totScore);
+    }
+    
+    /**
+     * Starts the program in evaluation mode, playing the maps of
+     * the simulator's data file on a pool of worker threads.
+     * Unlike the simulator the agents do not learn between
+     * episodes: every agent plays from the utility database as
+     * it was loaded, so the average score is the same for any
+     * number of threads, and nothing is written back.
+     */
+    private void runEvaluation()
+    {
+        int threads = Config.getThreads() > 0 ? Config.getThreads() : Runtime.getRuntime().availableProcessors();
+        try (Stream<WorldMap> maps = readMaps())
+        {
+            runParallelEvaluation(maps.iterator(), threads);
+        }
+    }
+    
+    /**
+     * Opens the maps of the simulator's data file, followed by
+     * the random maps. The maps are read while they are played.
+     * 
+     * @return Stream of the maps
+     */
+    private static Stream<WorldMap> readMaps()
+    {
+        Stream<WorldMap> fileMaps;
+        try
+        {
+            fileMaps = new MapReader().stream();
+        }
+        catch (UncheckedIOException ex)
+        {
+            System.err.println("Could not read map file: " + ex.getMessage());
+            fileMaps = Stream.empty();
+        }
+        return Stream.concat(fileMaps, MapReader.randomMaps());
     }
     
     /**
@@ -75,25 +160,478 @@ public class WumpusWorld {
      */
     private void runSimulator()
     {
+        int size = Config.getSize();
+        int threads = Config.getThreads();
+        if (threads > 0)
+        {
+            List<WorldMap> maps = new ArrayList<>();
+            for (int i = 0; i < 10; i++)
+            {
+                maps.add(MapGenerator.getRandomMap(i, size));
+            }
+            runParallelSimulation(maps.iterator(), threads);
+            return;
+        }
+        
         double totScore = 0;
         for (int i = 0; i < 10; i++)
         {
-            WorldMap w = MapGenerator.getRandomMap(i);
-            totScore += (double)runSimulation(w.generateWorld());
+            WorldMap w = MapGenerator.getRandomMap(i, size);
+            totScore += (double)runSimulation(w.generateWorld(), i);
         }
         totScore = totScore / (double)10;
         System.out.println("Average score: " + totScore);
     }
     
+    /**
+     * Starts the program in training mode. The agent plays the random
+     * maps Seed, Seed + 1, ... learning into the shared utility table in
+     * memory, which is written to the database file every checkpoint
+     * interval and when training ends. Nothing is printed per episode,
+     * only the throughput every report interval.
+     */
+    private void runTraining()
+    {
+        int episodes = Config.getEpisodes();
+        int seed = Config.getSeed();
+        int size = Config.getSize();
+        long checkpointInterval = Config.getCheckpointInterval() * 1000000L;
+        long reportInterval = Config.getReportInterval() * 1000000L;
+        UtilityTable utilityValues = UtilityTable.shared();
+        
+        long totScore = 0;
+        long actions = 0;
+        long start = System.nanoTime();
+        long lastCheckpoint = start;
+        long lastReport = start;
+        int reportEpisodes = 0;
+        long reportActions = 0;
+        for (int i = 0; i < episodes; i++)
+        {
+            World w = MapGenerator.getRandomMap(seed + i, size).generateWorld();
+            Agent a = new MyAgent(w, utilityValues);
+            while (!w.gameOver())
+            {
+                a.doAction();
+                actions++;
+            }
+            totScore += w.getScore();
+            
+            // The clock is only read every 256 episodes
+            if ((i & 255) != 255)
+                continue;
+            long now = System.nanoTime();
+            if (now - lastReport >= reportInterval)
+            {
+                double seconds = (now - lastReport) / 1e9;
+                System.out.println(String.format("%d episodes, %.0f episodes/s, %.0f actions/s, %d utility values",
+                        i + 1, (i + 1 - reportEpisodes) / seconds, (actions - reportActions) / seconds, utilityValues.size()));
+                lastReport = now;
+                reportEpisodes = i + 1;
+                reportActions = actions;
+            }
+            if (checkpointInterval > 0 && now - lastCheckpoint >= checkpointInterval)
+            {
+                utilityValues.save();
+                lastCheckpoint = System.nanoTime();
+            }
+        }
+        utilityValues.save();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.println(String.format("Trained %d episodes in %.2f s (%.0f episodes/s, %.0f actions/s), %d utility values",
+                episodes, seconds, episodes / seconds, actions / seconds, utilityValues.size()));
+        System.out.println("Average score: " + (episodes > 0 ? (double)totScore / (double)episodes : 0.0));
+    }
+    
+    /**
+     * Starts the program in exhaustive evaluation mode. The agent plays
+     * every distinct 4x4 world: 15 Wumpus squares, 15 gold squares and
+     * all 455 sets of three pits, none on the start square. Every world
+     * is played from the utility database as it was loaded, without
+     * learning, on a pool of worker threads, and the exact mean score
+     * and the score distribution are printed.
+     */
+    private void runExhaustive()
+    {
+        final int size = 4;
+        final int squares = size * size - 1;
+        // All sets of three pits as bitmasks over squares 1..15
+        final int[] pitSets = new int[squares * (squares - 1) * (squares - 2) / 6];
+        int n = 0;
+        for (int a = 1; a <= squares; a++)
+        {
+            for (int b = a + 1; b <= squares; b++)
+            {
+                for (int c = b + 1; c <= squares; c++)
+                {
+                    pitSets[n++] = 1 << a | 1 << b | 1 << c;
+                }
+            }
+        }
+        // Sorted, so the mirrored pit set can be found by binary search
+        Arrays.sort(pitSets);
+        final int worlds = squares * squares * pitSets.length;
+        final boolean reflect = Config.getReflect();
+        final int[] scores = new int[worlds];
+        final byte[] weights = new byte[worlds];
+        final UtilityTable utilityValues = UtilityTable.shared();
+        final AtomicInteger next = new AtomicInteger();
+        int threads = Config.getThreads() > 0 ? Config.getThreads() : Runtime.getRuntime().availableProcessors();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++)
+        {
+            workers.add(pool.submit(() ->
+            {
+                for (int i = next.getAndIncrement(); i < worlds; i = next.getAndIncrement())
+                {
+                    // Squares are numbered (x-1)*size + (y-1), square 0 is the start
+                    int wumpus = 1 + i / (squares * pitSets.length);
+                    int gold = 1 + i / pitSets.length % squares;
+                    int pits = pitSets[i % pitSets.length];
+                    weights[i] = 1;
+                    if (reflect)
+                    {
+                        // Only play the world with the smaller number of a mirrored pair
+                        int mirror = (reflectSquare(wumpus, size) - 1) * squares * pitSets.length
+                                + (reflectSquare(gold, size) - 1) * pitSets.length
+                                + Arrays.binarySearch(pitSets, reflectSquares(pits, size));
+                        if (mirror < i)
+                        {
+                            weights[i] = 0;
+                            continue;
+                        }
+                        if (mirror > i)
+                            weights[i] = 2;
+                    }
+                    
+                    World w = new World(size);
+                    w.addWumpus(wumpus / size + 1, wumpus % size + 1);
+                    w.addGold(gold / size + 1, gold % size + 1);
+                    for (int s = 1; s <= squares; s++)
+                    {
+                        if ((pits & 1 << s) != 0)
+                            w.addPit(s / size + 1, s % size + 1);
+                    }
+                    scores[i] = playEpisode(w, new MyAgent(w, new UtilityOverlay(utilityValues)));
+                }
+            }));
+        }
+        try
+        {
+            for (Future<?> f : workers)
+            {
+                f.get();
+            }
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new RuntimeException("Evaluation failed", ex);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        // Sort the weighted scores to get the distribution
+        int played = 0;
+        int filled = 0;
+        long totScore = 0;
+        int[] sorted = new int[worlds];
+        for (int i = 0; i < worlds; i++)
+        {
+            for (int k = 0; k < weights[i]; k++)
+            {
+                sorted[filled++] = scores[i];
+                totScore += scores[i];
+            }
+            if (weights[i] > 0)
+                played++;
+        }
+        if (filled != worlds)
+            throw new IllegalStateException("Weights add up to " + filled + " worlds, not " + worlds);
+        Arrays.sort(sorted);
+        double mean = (double)totScore / worlds;
+        double variance = 0;
+        for (int score : sorted)
+        {
+            variance += (score - mean) * (score - mean);
+        }
+        
+        System.out.println(String.format("Played %d of %d worlds on %d threads in %.2f s (%.0f episodes/s)",
+                played, worlds, threads, seconds, played / seconds));
+        System.out.println("Average score: " + mean);
+        System.out.println(String.format("Standard deviation: %.2f", Math.sqrt(variance / worlds)));
+        System.out.println(String.format("Min %d, 10%% %d, 25%% %d, median %d, 75%% %d, 90%% %d, max %d",
+                sorted[0], sorted[worlds / 10], sorted[worlds / 4], sorted[worlds / 2],
+                sorted[worlds * 3 / 4], sorted[worlds * 9 / 10], sorted[worlds - 1]));
+        System.out.println("Score distribution:");
+        int bucket = 500;
+        int from = Math.floorDiv(sorted[0], bucket) * bucket;
+        for (int i = 0; i < worlds; )
+        {
+            int count = 0;
+            while (i < worlds && sorted[i] < from + bucket)
+            {
+                count++;
+                i++;
+            }
+            if (count > 0)
+                System.out.println(String.format("%6d to %6d: %6d worlds (%5.2f%%)", from, from + bucket - 1, count, 100.0 * count / worlds));
+            from += bucket;
+        }
+    }
+    
+    /**
+     * Mirrors a square along the diagonal through the start square.
+     * 
+     * @param square Square numbered (x-1)*size + (y-1)
+     * @param size Size of the world
+     * @return The mirrored square
+     */
+    private static int reflectSquare(int square, int size)
+    {
+        return square % size * size + square / size;
+    }
+    
+    /**
+     * Mirrors a set of squares along the diagonal through the start square.
+     * 
+     * @param squares Bitmask of squares numbered (x-1)*size + (y-1)
+     * @param size Size of the world
+     * @return Bitmask of the mirrored squares
+     */
+    private static int reflectSquares(int squares, int size)
+    {
+        int mirrored = 0;
+        for (int s = 0; s < size * size; s++)
+        {
+            if ((squares & 1 << s) != 0)
+                mirrored |= 1 << reflectSquare(s, size);
+        }
+        return mirrored;
+    }
+    
+    /**
+     * Starts the program in simulator mode, playing the maps
+     * on a pool of worker threads with the same result as the
+     * sequential simulator. Workers play episodes ahead from the
+     * shared utility table, every agent learning into its own
+     * overlay, and the episodes are committed in map order. An
+     * episode that would have decided differently on the values
+     * committed before it is played again on the shared table
+     * when its turn comes, see UtilityOverlay. So every episode
+     * plays as it would have sequentially, and the scores, the
+     * average and the database are the same as for the
+     * sequential run.
+     * 
+     * @param maps Maps to play, taken by the workers one at a time
+     * @param threads Number of worker threads
+     */
+    private void runParallelSimulation(final Iterator<WorldMap> maps, int threads)
+    {
+        final UtilityTable utilityValues = UtilityTable.shared();
+        // Episodes that may be started before the oldest one is committed
+        final int window = 4 * threads;
+        final Object lock = new Object();
+        final AtomicInteger started = new AtomicInteger();
+        final AtomicInteger committed = new AtomicInteger();
+        final AtomicInteger replayed = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final AtomicLong totScore = new AtomicLong();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++)
+        {
+            workers.add(pool.submit(() ->
+            {
+                try
+                {
+                    while (true)
+                    {
+                        int map;
+                        WorldMap worldMap;
+                        synchronized (lock)
+                        {
+                            while (!failed.get() && started.get() - committed.get() >= window)
+                                lock.wait();
+                            if (failed.get() || !maps.hasNext())
+                                break;
+                            worldMap = maps.next();
+                            map = started.getAndIncrement();
+                        }
+                        
+                        FlightEvents.Episode event = new FlightEvents.Episode();
+                        event.begin();
+                        World w = worldMap.generateWorld();
+                        UtilityOverlay overlay = new UtilityOverlay(utilityValues);
+                        Agent a = new MyAgent(w, overlay);
+                        int actions = 0;
+                        while (!w.gameOver())
+                        {
+                            a.doAction();
+                            actions++;
+                        }
+                        
+                        synchronized (lock)
+                        {
+                            while (!failed.get() && committed.get() != map)
+                                lock.wait();
+                            if (failed.get())
+                                break;
+                        }
+                        // Only this worker changes the table until committed is incremented
+                        if (overlay.commit())
+                        {
+                            if (UtilityWriter.isEnabled())
+                                UtilityWriter.update();
+                            else if (!utilityValues.isLogged())
+                                utilityValues.save();
+                            totScore.addAndGet(endEpisode(w, map, actions, event));
+                        }
+                        else
+                        {
+                            replayed.incrementAndGet();
+                            totScore.addAndGet(runSimulation(worldMap.generateWorld(), map));
+                        }
+                        synchronized (lock)
+                        {
+                            committed.incrementAndGet();
+                            lock.notifyAll();
+                        }
+                    }
+                }
+                catch (RuntimeException ex)
+                {
+                    // Stop the other workers, which may be waiting for this one
+                    synchronized (lock)
+                    {
+                        failed.set(true);
+                        lock.notifyAll();
+                    }
+                    throw ex;
+                }
+                return null;
+            }));
+        }
+        try
+        {
+            for (Future<?> f : workers)
+            {
+                f.get();
+            }
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new RuntimeException("Simulation failed", ex);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.println(String.format("Played %d episodes on %d threads in %.2f s (%.0f episodes/s), %d played again",
+                committed.get(), threads, seconds, committed.get() / seconds, replayed.get()));
+        System.out.println("Average score: " + (double)totScore.get() / (double)committed.get());
+    }
+    
+    /**
+     * Plays maps on a pool of worker threads. All agents share
+     * the utility table read-only, so the average score is the
+     * same for any number of threads.
+     * 
+     * @param maps Maps to play, taken by the workers one at a time
+     * @param threads Number of worker threads
+     */
+    private void runParallelEvaluation(final Iterator<WorldMap> maps, int threads)
+    {
+        final UtilityTable utilityValues = UtilityTable.shared();
+        final AtomicInteger episodes = new AtomicInteger();
+        final AtomicLong totScore = new AtomicLong();
+        
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++)
+        {
+            workers.add(pool.submit(() ->
+            {
+                long score = 0;
+                int played = 0;
+                while (true)
+                {
+                    WorldMap map;
+                    synchronized (maps)
+                    {
+                        if (!maps.hasNext())
+                            break;
+                        map = maps.next();
+                    }
+                    World w = map.generateWorld();
+                    score += playEpisode(w, new MyAgent(w, new UtilityOverlay(utilityValues)));
+                    played++;
+                }
+                totScore.addAndGet(score);
+                episodes.addAndGet(played);
+            }));
+        }
+        try
+        {
+            for (Future<?> f : workers)
+            {
+                f.get();
+            }
+        }
+        catch (InterruptedException | ExecutionException ex)
+        {
+            throw new RuntimeException("Evaluation failed", ex);
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        
+        System.out.println(String.format("Played %d episodes on %d threads in %.2f s (%.0f episodes/s)",
+                episodes.get(), threads, seconds, episodes.get() / seconds));
+        System.out.println("Average score: " + (double)totScore.get() / (double)episodes.get());
+    }
+    
+    /**
+     * Lets an agent play a Wumpus World until the game is over.
+     * 
+     * @param w Wumpus World
+     * @param a Agent playing the world
+     * @return Achieved score
+     */
+    private static int playEpisode(World w, Agent a)
+    {
+        while (!w.gameOver())
+        {
+            a.doAction();
+        }
+        return w.getScore();
+    }
+    
     /**
      * Runs the solver agent for the specified Wumpus
      * World.
      * 
      * @param w Wumpus World
+     * @param map Number of the map, for the Episode flight event
      * @return Achieved score
      */
-    private int runSimulation(World w)
+    private int runSimulation(World w, int map)
     {
+        FlightEvents.Episode event = new FlightEvents.Episode();
+        event.begin();
         int actions = 0;
         Agent a = new MyAgent(w);
         while (!w.gameOver())
@@ -101,7 +639,30 @@ public class WumpusWorld {
             a.doAction();
             actions++;
         }
+        return endEpisode(w, map, actions, event);
+    }
+    
+    /**
+     * Ends a simulated episode, reporting its score.
+     * 
+     * @param w Wumpus World, where the game is over
+     * @param map Number of the map, for the Episode flight event
+     * @param actions Number of agent decisions
+     * @param event Episode flight event, begun when the episode started
+     * @return Achieved score
+     */
+    private static int endEpisode(World w, int map, int actions, FlightEvents.Episode event)
+    {
+        UtilityWriter.episodeFinished();
         int score = w.getScore();
+        if (event.shouldCommit())
+        {
+            event.map = map;
+            event.size = w.getSize();
+            event.actions = actions;
+            event.score = score;
+            event.commit();
+        }
         System.out.println("Simulation ended after " + actions + " actions. Score " + score);
         return score;
     }